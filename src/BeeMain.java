@@ -1,11 +1,98 @@
+import log.EventLog;
+import metrics.MetricsReporter;
+import tools.HiveSweep;
 import world.BeeHive;
+import world.FlowerField;
+import world.HiveConfig;
+import world.HiveSnapshot;
+import world.MatingScheduler;
+import world.SimulationClock;
+import world.WakeSignal;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * The main program for the bee simulation.<br>
  * <br>
  * It is run on the command line with four arguments:<br>
  * <br>
- * <tt>$ java BeeMain seconds drones nectar_workers pollen_workers</tt>
+ * <tt>$ java BeeMain seconds drones nectar_workers pollen_workers</tt><br>
+ * <br>
+ * Optional settings may be given ahead of the arguments in the form
+ * <tt>--name=value</tt>:<br>
+ * <br>
+ * <ul>
+ * <li><tt>--executor=platform|virtual|pool|scheduled|event|bulk</tt> - how each bee is run,
+ * <tt>scheduled</tt> runs the workers' trips as timer tasks on a few threads,
+ * <tt>event</tt> and <tt>bulk</tt> use a virtual clock instead of sleeping,
+ * and <tt>bulk</tt> keeps the bees in primitive arrays for millions of bees</li>
+ * <li><tt>--bulk-threads=N</tt> - the threads that step the bees in bulk mode</li>
+ * <li><tt>--scheduler-threads=N</tt> - the threads that drive the workers'
+ * trips in scheduled mode</li>
+ * <li><tt>--log-level=trace|info|off</tt> - how much of the transcript is logged</li>
+ * <li><tt>--log-only=FF,QC,BH,Q,D</tt> - which subsystems are logged</li>
+ * <li><tt>--log-file=path</tt> - write the transcript to a file instead of the console</li>
+ * <li><tt>--log-format=text|binary</tt> - write a compact binary trace to the
+ * log file (<tt>hive.trace</tt> by default) instead of the transcript, see
+ * {@link tools.TraceReplay}</li>
+ * <li><tt>--log-sync</tt> - write each event as it happens instead of from a
+ * background thread</li>
+ * <li><tt>--queen-wait=park|spin</tt> - whether the queen parks until she can
+ * mate or polls for it like the original busy loop</li>
+ * <li><tt>--queen-stats</tt> - report the queen's condition checks, wake ups
+ * and idle time</li>
+ * <li><tt>--queens=N</tt> - the number of queens, each mating and giving birth
+ * concurrently with the others</li>
+ * <li><tt>--chambers=shared|sharded</tt> - whether the queens share one chamber
+ * or each has her own, with the drones dealt out to them in turn</li>
+ * <li><tt>--fields=N</tt> - the number of flower fields</li>
+ * <li><tt>--field-capacity=N[,N...]</tt> - the number of flowers in each field,
+ * the last one given is used for the rest</li>
+ * <li><tt>--field-route=round-robin|least-loaded|two-choice</tt> - which field
+ * a worker heads to on each trip</li>
+ * <li><tt>--field-policy=unfair|fair|priority:NECTAR|priority:POLLEN</tt> - who
+ * gets the next free flower</li>
+ * <li><tt>--birth-policy=fixed|resource-aware</tt> - whether the queens'
+ * litters follow the original odds or what the hive needs</li>
+ * <li><tt>--field-stats[=workers]</tt> - report how long the workers waited for a
+ * flower, optionally for every worker</li>
+ * <li><tt>--seed=N</tt> - replay the same births for the same seed and arguments</li>
+ * <li><tt>--sweep</tt> - each argument may be a comma separated list, and every
+ * combination is simulated in parallel with the statistics written as CSV
+ * (see {@link tools.HiveSweep})</li>
+ * <li><tt>--sweep-out=path</tt> - write the sweep's CSV to a file instead of the console</li>
+ * <li><tt>--metrics-file=path</tt> - append a live metrics snapshot to a file
+ * every <tt>--metrics-interval-ms=1000</tt></li>
+ * <li><tt>--metrics-port=N</tt> - serve the latest snapshot at
+ * <tt>http://localhost:N/metrics</tt></li>
+ * <li><tt>--load=N</tt>, <tt>--load-nectar=N</tt>, <tt>--load-pollen=N</tt> - the
+ * units a worker carries back from each trip and deposits at once</li>
+ * <li><tt>--bee-pool=256</tt> - how many perished drones are kept to be
+ * reused by later births, 0 to always allocate a new bee</li>
+ * <li><tt>--shutdown-grace-ms=0</tt> - how long the bees may finish what they
+ * are doing when the simulation ends before they are interrupted</li>
+ * <li><tt>--shutdown-deadline-ms=10000</tt> - how long the hive waits for its
+ * bees in total before reporting the ones still running and moving on</li>
+ * <li><tt>--contention[=10]</tt> - profile where the bees wait on each other,
+ * sampling the threads every N ms, and print a ranked report at the end</li>
+ * <li><tt>--time-scale=1</tt> - how much faster than real time the bees run,
+ * e.g. 100 to run 300 seconds in 3 or 0.1 to slow them down; the actual
+ * scale is reported</li>
+ * <li><tt>--snapshot=path</tt> - write a snapshot of the hive to a file when
+ * the simulation ends, see {@link HiveSnapshot}</li>
+ * <li><tt>--restore=path</tt> - carry on from a snapshot instead of starting a
+ * new hive, in which case only the seconds are given</li>
+ * </ul>
  *
  * @author Sean Strout @ RIT CS
  */
@@ -15,6 +102,8 @@ public class BeeMain {
     private final int SIMULATION_TIME_MS;
     /** the bee hive */
     private BeeHive beeHive;
+    /** the optional settings */
+    private final HiveConfig config;
 
     /**
      * Create the BeeMain.  It sets the simulation time, displays some starting
@@ -26,33 +115,129 @@ public class BeeMain {
      * @param numPollenWorkers number of starting pollen workers
      */
     public BeeMain(int simulationTime, int numDrones, int numNectarWorkers, int numPollenWorkers) {
+        this(simulationTime, numDrones, numNectarWorkers, numPollenWorkers, new HiveConfig());
+    }
+
+    /**
+     * Create the BeeMain with optional settings for the bee hive.
+     *
+     * @param simulationTime simulation time in seconds
+     * @param numDrones number of starting drones
+     * @param numNectarWorkers number of starting nectar workers
+     * @param numPollenWorkers number of starting pollen workers
+     * @param config the optional settings
+     */
+    public BeeMain(int simulationTime, int numDrones, int numNectarWorkers, int numPollenWorkers,
+                   HiveConfig config) {
         this.SIMULATION_TIME_MS = simulationTime * 1000; // convert from s to ms
+        this.config = config;
 
         System.out.println("Simulation time: " + simulationTime + " seconds");
         System.out.println("Starting drones: " + numDrones);
         System.out.println("Starting nectar workers: " + numNectarWorkers);
         System.out.println("Starting pollen workers: " + numPollenWorkers);
 
-        this.beeHive = new BeeHive(numDrones, numNectarWorkers, numPollenWorkers);
+        configureLog(config);
+        this.beeHive = new BeeHive(numDrones, numNectarWorkers, numPollenWorkers, config);
+    }
+
+    /**
+     * Create the BeeMain for a hive restored from a snapshot.
+     *
+     * @param simulationTime simulation time in seconds
+     * @param snapshot the snapshot
+     * @param config the optional settings
+     */
+    public BeeMain(int simulationTime, HiveSnapshot snapshot, HiveConfig config) {
+        this.SIMULATION_TIME_MS = simulationTime * 1000; // convert from s to ms
+        this.config = config;
+
+        System.out.println("Simulation time: " + simulationTime + " seconds");
+        System.out.println("Restored from: " + config.getRestoreFile()
+                + " (" + snapshot.getElapsedMs() / 1000 + " seconds in)");
+        System.out.println("Restored bees: " + snapshot.getNumBees());
+
+        configureLog(config);
+        this.beeHive = new BeeHive(snapshot, config);
     }
 
     /**
      * Run the simulation
      */
     private void go() {
+        MetricsReporter reporter = startMetrics();
+
         // tell the bees to start
         this.beeHive.begin();
 
         // wait for the simulation time to expire
         try {
-            Thread.sleep(SIMULATION_TIME_MS);
+            this.beeHive.runFor(SIMULATION_TIME_MS);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
 
         // tell the bees the party is over, and then display some final statistics
         this.beeHive.end();
+        EventLog.close();
+        if (reporter != null) {
+            reporter.close();
+        }
         statistics();
+        if (this.beeHive.getSnapshot() != null) {
+            try {
+                this.beeHive.getSnapshot().write(Paths.get(this.config.getSnapshotFile()));
+            } catch (IOException e) {
+                System.err.println("Unable to write " + this.config.getSnapshotFile() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start reporting live metrics, if they were asked for.
+     *
+     * @return the reporter, or null
+     */
+    private MetricsReporter startMetrics() {
+        if (!this.config.isMetrics()) {
+            return null;
+        }
+        try {
+            PrintStream file = this.config.getMetricsFile() == null ? null
+                    : new PrintStream(new FileOutputStream(this.config.getMetricsFile()));
+            return new MetricsReporter(this.beeHive.getMetrics(), this.config.getMetricsIntervalMs(),
+                    file, this.config.getMetricsPort());
+        } catch (IOException e) {
+            System.err.println("Unable to report metrics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Set up the event log from the optional settings.
+     *
+     * @param config the optional settings
+     */
+    private static void configureLog(HiveConfig config) {
+        if (config.isLogBinary()) {
+            String file = config.getLogFile() != null ? config.getLogFile() : "hive.trace";
+            try {
+                EventLog.configureTrace(config.getLogLevel(), config.getLogSubsystems(), Paths.get(file));
+                return;
+            } catch (IOException e) {
+                System.err.println("Unable to create " + file + ", logging to the console");
+            }
+        }
+        OutputStream output = System.out;
+        if (config.getLogFile() != null) {
+            try {
+                output = new BufferedOutputStream(new FileOutputStream(config.getLogFile()));
+            } catch (FileNotFoundException e) {
+                System.err.println("Unable to open " + config.getLogFile() + ", logging to the console");
+            }
+        }
+        EventLog.configure(config.getLogLevel(), config.getLogSubsystems(), output,
+                config.isLogAsync(), config.getLogRingSize());
     }
 
     /**
@@ -63,10 +248,83 @@ public class BeeMain {
         System.out.println("==========");
         System.out.println("Bees born: " + this.beeHive.getNumBorn());
         System.out.println("Bees perished: " +  this.beeHive.getNumPerished());
+        System.out.println("Bees alive: " + this.beeHive.getNumLive());
+        System.out.println("Shutdown time: " + this.beeHive.getShutdownMs() + " ms");
+        List<String> running = this.beeHive.getStillRunning();
+        if (!running.isEmpty()) {
+            System.out.println("Bees still running at the deadline: " + running.size() + " " + running);
+        }
+        if (this.config.isTimeScaled()) {
+            SimulationClock clock = this.beeHive.getClock();
+            System.out.printf("Time scale: requested %.1fx, actual %.1fx", clock.getScale(), clock.getRunScale());
+            if (clock.getBeeSleeps() > 0) {
+                System.out.printf(", bee sleeps %.1fx (%d sleeps)", clock.getBeeScale(), clock.getBeeSleeps());
+            }
+            System.out.println();
+        }
         System.out.println("Nectar gathered: " + this.beeHive.getNectarGathered());
         System.out.println("Pollen gathered: " + this.beeHive.getPollenGathered());
         System.out.println("Nectar remaining: " + this.beeHive.getRemainingNectar());
         System.out.println("Pollen remaining: " + this.beeHive.getRemainingPollen());
+        if (this.config.isBatchedLoads()) {
+            System.out.println("Deposit trips: " + this.beeHive.getDepositUpdates()
+                    + " (nectar load " + this.config.getNectarLoad()
+                    + ", pollen load " + this.config.getPollenLoad() + ")");
+        }
+        if (this.config.isQueenStats()) {
+            WakeSignal signal = this.beeHive.getQueenSignal();
+            System.out.println("Queen condition checks: " + signal.getChecks());
+            System.out.println("Queen wake-ups: " + signal.getWakeUps()
+                    + " (spurious: " + signal.getSpuriousWakeUps() + ")");
+            System.out.println("Queen idle time: " + signal.getIdleMs() + " ms");
+        }
+        MatingScheduler scheduler = this.beeHive.getMatingScheduler();
+        if (scheduler.getQueenCount() > 1) {
+            for (int i = 0; i < scheduler.getQueenCount(); i++) {
+                System.out.println("Queen " + (i + 1) + ": matings " + scheduler.getMatings(i)
+                        + ", births " + scheduler.getBirths(i));
+            }
+            System.out.println("Missed pairings: " + scheduler.getMissedPairings());
+        }
+        List<FlowerField> fields = this.beeHive.getFlowerFields();
+        if (fields.size() > 1) {
+            for (int i = 0; i < fields.size(); i++) {
+                FlowerField field = fields.get(i);
+                System.out.printf("Field %d: capacity %d, trips %d, utilization %.1f%%%n", i + 1,
+                        field.getCapacity(), field.getTrips(), 100 * field.getUtilization(SIMULATION_TIME_MS));
+            }
+        }
+        if (this.config.isFieldStats()) {
+            this.beeHive.getFlowerField().getWaitStats().print(System.out, this.config.isFieldStatsPerWorker());
+        }
+        if (this.beeHive.getContention() != null) {
+            this.beeHive.getContention().report(System.out);
+        }
+    }
+
+    /**
+     * Run a sweep of simulations, see {@link HiveSweep}.
+     *
+     * @param options the optional settings
+     * @param arguments the comma separated seconds, drones, nectar workers and pollen workers
+     */
+    private static void sweep(Map<String, String> options, List<String> arguments) {
+        HiveSweep sweep = new HiveSweep(options,
+                HiveSweep.parseList(arguments.get(0)), // seconds
+                HiveSweep.parseList(arguments.get(1)), // #drones
+                HiveSweep.parseList(arguments.get(2)), // #nectar_workers
+                HiveSweep.parseList(arguments.get(3))  // #pollen_workers
+        );
+        String file = options.get("sweep-out");
+        if (file == null) {
+            sweep.run(System.out);
+        } else {
+            try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+                sweep.run(out);
+            } catch (FileNotFoundException e) {
+                System.err.println("Unable to open " + file);
+            }
+        }
     }
 
     /**
@@ -76,14 +334,43 @@ public class BeeMain {
      * @param args command line arguments
      */
     public static void main(String[] args) {
-        if (args.length != 4) {
-            System.out.println("Usage: java BeeMain seconds drones nectar_workers pollen_workers");
+        Map<String, String> options = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                int equals = arg.indexOf('=');
+                if (equals < 0) {
+                    options.put(arg.substring(2), "true");
+                } else {
+                    options.put(arg.substring(2, equals), arg.substring(equals + 1));
+                }
+            } else {
+                arguments.add(arg);
+            }
+        }
+
+        if (options.containsKey("restore") && arguments.size() == 1) {
+            HiveConfig config = new HiveConfig(options);
+            try {
+                new BeeMain(
+                        Integer.parseInt(arguments.get(0)), // seconds
+                        HiveSnapshot.read(Paths.get(config.getRestoreFile())),
+                        config
+                ).go();
+            } catch (IOException e) {
+                System.err.println("Unable to restore " + config.getRestoreFile() + ": " + e.getMessage());
+            }
+        } else if (arguments.size() != 4) {
+            System.out.println("Usage: java BeeMain [--option=value ...] seconds drones nectar_workers pollen_workers");
+        } else if (options.containsKey("sweep")) {
+            sweep(options, arguments);
         } else {
             new BeeMain(
-                    Integer.parseInt(args[0]), // seconds
-                    Integer.parseInt(args[1]), // #drones
-                    Integer.parseInt(args[2]), // #nectar_workers
-                    Integer.parseInt(args[3])  // #pollen_workers
+                    Integer.parseInt(arguments.get(0)), // seconds
+                    Integer.parseInt(arguments.get(1)), // #drones
+                    Integer.parseInt(arguments.get(2)), // #nectar_workers
+                    Integer.parseInt(arguments.get(3)), // #pollen_workers
+                    new HiveConfig(options)
             ).go();
         }
     }
@@ -1,22 +1,28 @@
 package bee;
 
+import log.EventLog;
+import log.EventType;
+import log.TraceSubject;
 import world.BeeHive;
 
 /**
  * The base class for all the different types of bees.  All bees have a role that
  * identified them, e.g. a drone who mates with the queen, the royal queen herself,
- * and the worker bees.  Each bee when created gets a unique ID that starts at 1
- * (the queen bee).  This allows us to uniquely identify each bee.  This class
+ * and the worker bees.  Each bee when created gets an ID that is unique within
+ * its bee hive and starts at 1 (the queen bee).  This allows us to uniquely
+ * identify each bee, even with several hives running in the same program.  This class
  * uses the factory method pattern to create a bee, so the caller does not
  * need to be aware of the subclass constructors.  For example, to create
  * a pollen worker bee (assume beeHive is the bee hive):<br>
  * <br>
  * <tt>Bee.createBee(Bee.Role.WORKER, Resource.POLLEN, beeHive)</tt><br>
  * <br>
+ * A bee is a task rather than a thread.  The bee hive decides how the
+ * task is executed (see {@link world.BeeExecutor}).
  *
  * @author Sean Strout @ RIT CS
  */
-public abstract class Bee extends Thread {
+public abstract class Bee implements Runnable, TraceSubject {
     /** The three roles */
     public enum Role {
         DRONE,
@@ -24,9 +30,6 @@ public abstract class Bee extends Thread {
         WORKER,
     }
 
-    /** the unique id to assign to the next bee created */
-    private static int ID = 1;
-
     /** the bee hive is protected so that the subclasses can access it directly */
     protected BeeHive beeHive;
 
@@ -34,6 +37,8 @@ public abstract class Bee extends Thread {
     private int id;
     /** the role of the bee */
     private Role role;
+    /** the bee's string form, made once since every logged event uses it */
+    private String label;
 
     /**
      * The factory method for creating a bee of a specific role.  It displays
@@ -52,7 +57,13 @@ public abstract class Bee extends Thread {
         Bee bee = null;
         switch (role) {
             case DRONE:
-                bee = new Drone(beeHive);
+                Drone drone = beeHive.reuseDrone();
+                if (drone != null) {
+                    drone.reincarnate();
+                    bee = drone;
+                } else {
+                    bee = new Drone(beeHive);
+                }
                 break;
             case WORKER:
                 bee = new Worker(resource, beeHive);
@@ -61,10 +72,33 @@ public abstract class Bee extends Thread {
                 bee = new Queen(beeHive);
                 break;
         }
-        System.out.println("*BH* " + bee + " is born!");
+        EventLog.log(EventType.BEE_BORN, bee);
         return bee;
     }
 
+    /**
+     * Bring back a bee from a snapshot of its hive, see
+     * {@link world.HiveSnapshot}.  Unlike {@link #createBee} nothing is
+     * displayed, since the bee was born in an earlier run, and perished
+     * drones are not reused.  The bee gets the id the hive hands out next,
+     * which the hive sets to the bee's old id.
+     *
+     * @param role the bee's role
+     * @param resource the bee's resource (only applicable to worker bees)
+     * @param beeHive the bee hive
+     * @return the bee
+     */
+    public static Bee restoreBee(Role role, Worker.Resource resource, BeeHive beeHive) {
+        switch (role) {
+            case DRONE:
+                return new Drone(beeHive);
+            case WORKER:
+                return new Worker(resource, beeHive);
+            default:
+                return new Queen(beeHive);
+        }
+    }
+
     /**
      * The actual constructor for a bee for setting the bee's role, their id,
      * and associating them with the bee hive.
@@ -74,10 +108,39 @@ public abstract class Bee extends Thread {
      */
     protected Bee(Role role, BeeHive beeHive) {
         this.role = role;
-        this.id = ID++;
+        this.id = beeHive.nextBeeId();
         this.beeHive = beeHive;
     }
 
+    /**
+     * Give a perished bee a new id so it can be born again, see
+     * {@link BeeHive#reuseDrone()}.
+     */
+    void reincarnate() {
+        this.id = this.beeHive.nextBeeId();
+        this.label = null;
+    }
+
+    /**
+     * Get the bee's unique id.
+     *
+     * @return id
+     */
+    @Override
+    public int getId() {
+        return this.id;
+    }
+
+    @Override
+    public int getRoleCode() {
+        return this.role.ordinal();
+    }
+
+    @Override
+    public int getResourceCode() {
+        return Worker.Resource.NONE.ordinal();
+    }
+
     /**
      * Get the bee's role.
      *
@@ -93,17 +156,32 @@ public abstract class Bee extends Thread {
      * <tt>{ROLE} #{id}</tt><br>
      * <br>
      * Here, <tt>{ROLE}</tt> is the bee's role, e.g. DRONE, QUEEN or WORKER,
-     * and {id} is the unique id of the bee.
+     * and {id} is the unique id of the bee.  Subclasses change the format
+     * with {@link #describe()}; the string is only built once.
      *
      * @return the string described here
      */
     @Override
     public String toString() {
+        String result = this.label;
+        if (result == null) {
+            result = describe();
+            this.label = result;
+        }
+        return result;
+    }
+
+    /**
+     * Build the string returned by {@link #toString()}.
+     *
+     * @return the string
+     */
+    protected String describe() {
         return this.role + " #" + this.id;
     }
 
     /**
-     * Two bees are equal if they have the same id.
+     * Two bees are equal if they have the same id in the same bee hive.
      *
      * @param other the other thing to compare with
      *
@@ -114,13 +192,13 @@ public abstract class Bee extends Thread {
         boolean result = false;
         if (other instanceof Bee) {
             Bee bee = (Bee) other;
-            result = this.id == bee.id;
+            result = this.id == bee.id && this.beeHive == bee.beeHive;
         }
         return result;
     }
 
     /**
-     * Since all bee's have unique id's, their hash code is just their id.
+     * Since all bee's in a hive have unique id's, their hash code is just their id.
      *
      * @return the hash code
      */
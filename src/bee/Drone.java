@@ -1,5 +1,7 @@
 package bee;
 
+import log.EventLog;
+import log.EventType;
 import world.BeeHive;
 import world.QueensChamber;
 
@@ -14,8 +16,16 @@ import world.QueensChamber;
  */
 public class Drone extends Bee {
 
-    private final int SLEEP_TIME_MS = 1000;
-    private boolean mated;
+    /**
+     * the time a drone lingers after mating before it perishes
+     */
+    public final static int SLEEP_TIME_MS = 1000;
+
+    /**
+     * whether the drone has mated, also read by a snapshot of the hive
+     * taken on another thread
+     */
+    private volatile boolean mated;
 
     /**
      * When the drone is created they should retrieve the queen's
@@ -44,27 +54,48 @@ public class Drone extends Bee {
      * <br>
      * Otherwise if the drone has not mated it means they survived the
      * simulation and they should end their run without any
-     * sleeping.
+     * sleeping.  A mated drone that is interrupted by the bee hive
+     * shutting down perishes without finishing its sleep.
      */
 
     public void run() {
         if(beeHive.isActive()){
 //            System.out.println("*D* " + Role.DRONE + " enters the queen's chamber.");
-            QueensChamber x = beeHive.getQueensChamber();
+            QueensChamber x = beeHive.chooseChamber(this);
             x.enterChamber(this);
             if(mated){
                 try {
-                    Thread.sleep(SLEEP_TIME_MS);
-                    beeHive.beePerished();
-                    System.out.println("*D* " + Role.DRONE +  " has perished!");
+                    beeHive.getClock().sleep(SLEEP_TIME_MS);
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    // cancelled by the hive shutting down, perish right away
                 }
+                EventLog.log(EventType.PERISHED, this);
+                // the hive may hand this drone to a newborn, so it is the last thing we do
+                beeHive.beePerished(this);
             }
 
         }
     }
 
+    /**
+     * Bring a perished drone back as a newborn with a new id who has not
+     * mated.
+     */
+    @Override
+    void reincarnate() {
+        super.reincarnate();
+        this.mated = false;
+    }
+
+    /**
+     * Has the drone mated?  If so it is about to perish.
+     *
+     * @return whether the drone mated
+     */
+    public boolean hasMated() {
+        return this.mated;
+    }
+
     /**
      * The queen will let the drone know when they have mated.
      */
@@ -1,10 +1,13 @@
 package bee;
 
+import log.EventLog;
+import log.EventType;
 import world.BeeHive;
+import world.BirthPolicy;
+import util.RandomBee;
+import world.MatingScheduler;
 import world.QueensChamber;
 
-import static util.RandomBee.nextInt;
-
 /**
  * The queen is the master of the bee hive and the only bee that is allowed
  * to mate with the drones.  The way the queen works is she will try to
@@ -16,7 +19,8 @@ import static util.RandomBee.nextInt;
  * </ul>
  * <br>
  * After the stimulating mating session which takes one unit of time,
- * the queen produces between 1 and 4 new bees (if resources exist).
+ * the queen produces between 1 and 4 new bees (if resources exist), as
+ * the hive's {@link BirthPolicy} decides.
  * Finally, the queen takes a break and smokes a cigarette and puts on some
  * netflix before she chills with her next drone.
  *
@@ -42,71 +46,133 @@ public class Queen extends Bee {
      */
     public final static int MAX_NEW_BEES = 4;
     private final QueensChamber chamber;
+    /**
+     * pairs the queen with the drones in her chamber
+     */
+    private final MatingScheduler scheduler;
+    /**
+     * the queen's index among the hive's queens
+     */
+    private final int index;
+    /**
+     * the queen's own random numbers, so a seeded run replays the same births
+     */
+    private final RandomBee.Stream random;
 
 
     /**
-     * Create the queen.  She should get the queen's chamber from the bee hive.
+     * Create the queen.  She should get her chamber from the bee hive's
+     * mating scheduler, which she may share with the other queens.
      *
      * @param beeHive the bee hive
      */
     public Queen(BeeHive beeHive) {
         super(Role.QUEEN, beeHive);
-        chamber = beeHive.getQueensChamber();
+        scheduler = beeHive.getMatingScheduler();
+        index = scheduler.enlist();
+        chamber = scheduler.getChamber(index);
+        random = beeHive.randomStream(getId());
     }
 
     /**
      * The queen will continue performing her task of mating until the bee hive
      * becomes inactive. Each time she tries to mate, whether successful or not,
      * she will sleep for the required time.
-     * The queen will first check that both conditions are met (see the class
-     * level description).  If so, the queen will summon the next drone,
+     * The queen will first wait until both conditions are met (see the class
+     * level description), parked rather than spinning.  If so, the scheduler
+     * pairs her with the drone at the front of her chamber and claims the
+     * resources, so no other queen can take either.  The queen will summon that drone,
      * and sleep to simulate the mating time.  Next,
-     * the queen will roll the dice to see how many bees she should
-     * try and create, between the min and max inclusive.  Each time there are
-     * enough resources a new bee is created.  The bees are created based on
-     * another random dice roll - a nectar worker bee has a 20% chance
-     * of being created, a pollen bee has a 20% change of being created,
-     * and a drone has a 60% change of being created.  After all the bees
+     * the queen gives birth, see {@link #giveBirth()}.  After all the bees
      * are created for a single mating message, you should display:<br>
      * <br>
      * <tt>*Q* Queen birthed # children</tt><br>
      * <br>
      * <br>
      * When the simulation is over and before the queen can retire, she needs
-     * to make sure that she individually dismisses each drone that is
-     * still waiting in her chamber.
+     * to make sure that she dismisses every drone that is still waiting in
+     * her chamber.<br>
+     * <br>
+     * Being interrupted is how the bee hive cancels the queen when it shuts
+     * down.  If that happens during her break the drone she was paired with
+     * is dismissed and the resources go back; if it happens while mating she
+     * gives birth right away.  Either way she retires without sleeping again.
      */
     public void run() {
         while (beeHive.isActive()) {
+            beeHive.awaitMatingConditions(index);
+            QueensChamber.Slot drone = scheduler.tryPair(index);
+            if (drone != null) {
+                try {
+                    beeHive.getClock().sleep(SLEEP_TIME_MS);
+                } catch (InterruptedException e) {
+                    scheduler.cancelPairing(index, drone);
+                    break;
+                }
+                chamber.summonDrone(drone);
+                boolean cancelled = false;
+                try {
+                    beeHive.getClock().sleep(MATE_TIME_MS);
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                }
 
-            try {
-                if (beeHive.hasResources() && chamber.hasDrone()) {
-                    Thread.sleep(SLEEP_TIME_MS);
-                    chamber.summonDrone();
-                    Thread.sleep(MATE_TIME_MS);
-
-                    int numBees = nextInt(MIN_NEW_BEES, MAX_NEW_BEES);
-                    for (int i = 0; i < numBees; i++) {
-                        int roleChance = nextInt(1, 10);
-                        if (roleChance < 3) {
-                            beeHive.addBee(Queen.createBee(Role.WORKER, Worker.Resource.POLLEN, beeHive));
-                        } else if (roleChance < 5) {
-                            beeHive.addBee(Queen.createBee(Role.WORKER, Worker.Resource.NECTAR, beeHive));
-
-                        } else {
-                            beeHive.addBee(Queen.createBee(Role.DRONE, Worker.Resource.NONE, beeHive));
-
-                        }
-                        beeHive.claimResources();//possible issue goes unchecked.
-                    }
-                    System.out.println("*Q* Queen birthed " + numBees +  " children");
-
+                giveBirth();
+                if (cancelled) {
+                    break;
                 }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
             }
         }
-        while(chamber.hasDrone())
-            chamber.dismissDrone();
+        chamber.dismissAllDrones();
+    }
+
+    /**
+     * After mating, ask the hive's {@link BirthPolicy} for the number of new
+     * bees and their roles, add each of them to the bee hive, and display:<br>
+     * <br>
+     * <tt>*Q* Queen birthed # children</tt><br>
+     * <br>
+     * The resources for the first bee must already have been claimed with
+     * {@link MatingScheduler#tryPair(int)} or {@link BeeHive#tryClaimResources()}
+     * when the queen decided to mate.  Every other bee claims 1 unit of each
+     * resource before it is born, and once the stock runs out the litter ends
+     * there, so the stock never goes negative.
+     * This is shared by {@link #run()} and the discrete event engine, which
+     * steps the queen without a thread of her own.
+     */
+    public void giveBirth() {
+        BirthPolicy policy = beeHive.getBirthPolicy();
+        int numBees = policy.litterSize(beeHive, index, random);
+        int born = 0;
+        while (born < numBees) {
+            // the first bee's resources were claimed before mating
+            if (born > 0 && !beeHive.tryClaimResources()) {
+                break;
+            }
+            Worker.Resource resource = policy.nextBee(beeHive, index, random);
+            Role role = resource == Worker.Resource.NONE ? Role.DRONE : Role.WORKER;
+            beeHive.addBee(Queen.createBee(role, resource, beeHive));
+            born++;
+        }
+        scheduler.recordBirths(index, born);
+        EventLog.log(EventType.BIRTHED, born);
+    }
+
+    /**
+     * Get the queen's own random numbers, e.g. to save or restore their state.
+     *
+     * @return the stream
+     */
+    public RandomBee.Stream getRandom() {
+        return random;
+    }
+
+    /**
+     * Get the queen's index among the hive's queens.
+     *
+     * @return the index, from 0
+     */
+    public int getIndex() {
+        return index;
     }
 }
\ No newline at end of file
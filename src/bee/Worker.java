@@ -5,11 +5,12 @@ import world.FlowerField;
 
 /**
  * The female worker bee has the task of going to the flower field and collecting
- * their assigned resource - nectar or pollen.  A worker will always get exactly 1
- * unit of their resource each time they go out to the field and when they
- * return will deposit that resource into the bee hive (as long as the hive is still
- * active). After each successful gather, the worker will sleep for the required time
- * before heading out to the fields again.
+ * their assigned resource - nectar or pollen.  A worker gets the hive's load of
+ * their resource each time they go out to the field, 1 unit unless set otherwise
+ * with --load, --load-nectar or --load-pollen, and when they return will deposit
+ * that load into the bee hive (as long as the hive is still active).  After each
+ * successful gather, the worker will sleep for the required time before heading
+ * out to the fields again.
  *
  * @author Sean Strout @ RIT CS
  * @author Isaias Villalobos
@@ -34,14 +35,21 @@ public class Worker extends Bee {
      * the resource the worker will continually gather
      */
     private Resource resource;
+
     /**
-     * the field of flowers
+     * the field the worker is gathering in, or after a restore the field it
+     * heads back to first, otherwise null
      */
-    private FlowerField flowerField;
+    private volatile FlowerField flowerField;
 
     /**
-     * Create the worker.  They need to remember their resource, as well as get
-     * access to the flower field via the bee hive.
+     * when the worker took its flower, kept only while contention is profiled
+     */
+    private long flowerTakenNanos;
+
+    /**
+     * Create the worker.  They need to remember their resource.  The bee hive
+     * tells them which flower field to go to on each trip.
      *
      * @param resource their resource
      * @param beeHive  the bee hive
@@ -49,49 +57,115 @@ public class Worker extends Bee {
     protected Worker(Resource resource, BeeHive beeHive) {
         super(Role.WORKER, beeHive);
         this.resource = resource;
-        this.flowerField = beeHive.getFlowerField();
+    }
+
+    /**
+     * Get the resource this worker gathers.
+     *
+     * @return the resource
+     */
+    public Resource getResource() {
+        return this.resource;
+    }
+
+    /**
+     * Get the field the worker is gathering in.  After a restore, this is
+     * the field the worker was gathering in when the snapshot was taken,
+     * until it gets there.
+     *
+     * @return the field, or null if the worker is not in one
+     */
+    public FlowerField getFlowerField() {
+        return this.flowerField;
+    }
+
+    /**
+     * The flower field lets the worker know when it takes and gives back a
+     * flower, see {@link #getFlowerField()}.
+     *
+     * @param flowerField the field, or null when leaving it
+     */
+    public void setFlowerField(FlowerField flowerField) {
+        this.flowerField = flowerField;
+    }
+
+    /**
+     * When did the worker take its flower?  Only kept while the hive's
+     * contention is profiled.
+     *
+     * @return the time from {@link System#nanoTime()}
+     */
+    public long getFlowerTakenNanos() {
+        return this.flowerTakenNanos;
+    }
+
+    /**
+     * The flower field notes when the worker took its flower, so that it
+     * can tell how long the worker held on to it.
+     *
+     * @param nanos the time from {@link System#nanoTime()}
+     */
+    public void setFlowerTakenNanos(long nanos) {
+        this.flowerTakenNanos = nanos;
+    }
+
+    @Override
+    public int getResourceCode() {
+        return this.resource.ordinal();
     }
 
     /**
      * The worker bee returns a string that contains the role, followed
-     * by {@link Bee#toString()}'s string, e.g.:
+     * by {@link Bee#describe()}'s string, e.g.:
      * <br>
      * <tt>{RESOURCE} ROLE #{id}</tt><br>
      * <br>
      * <br>
      * Here, {RESOURCE} is the resource, e.g. NECTAR or POLLEN,
      * ROLE is the role (should always be WORKER, but let the superclass
-     * toString() figure that out), and {id} is the unique id.
+     * describe() figure that out), and {id} is the unique id.
      *
      * @return the string as described here
      */
     @Override
-    public String toString() {
-        return this.resource + " " + super.toString();
+    protected String describe() {
+        return this.resource + " " + super.describe();
     }
 
     /**
-     * When the worker runs, they will enter the field.  If there is
+     * When the worker runs, they will enter the field the bee hive picks
+     * for the trip.  If there is
      * a free flower, they will sleep the required time to simulate
      * the extraction, then they will leave the field and deposit
      * their resource into the bee hive.  This process
-     * repeats until the bee hive becomes inactive.
+     * repeats until the bee hive becomes inactive, or until the worker is
+     * interrupted by the bee hive shutting down, in which case they leave
+     * the field without depositing.
      */
     public void run() {
 
-        FlowerField field = beeHive.getFlowerField();
         while (beeHive.isActive()) {
-
-            field.enterField(this);
-            try {
-                Thread.sleep(WORKER_SLEEP_TIME_MS);
-
+            FlowerField field = flowerField != null ? flowerField : beeHive.chooseField();
+            if (!field.enterField(this)) {
+                // cancelled by the hive shutting down
+                return;
+            }
+            if (!beeHive.isActive()) {
+                // the simulation ended while waiting, pass the flower on right away
                 field.exitField(this);
-                if(beeHive.isActive())
-                    beeHive.deposit(resource,this);
+                return;
+            }
+            try {
+                beeHive.getClock().sleep(WORKER_SLEEP_TIME_MS);
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                // cancelled by the hive shutting down, give the flower back
+                field.exitField(this);
+                return;
             }
+
+            field.exitField(this);
+            if(beeHive.isActive())
+                beeHive.deposit(resource,this);
         }
     }
     }
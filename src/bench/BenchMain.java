@@ -0,0 +1,415 @@
+package bench;
+
+import log.EventLog;
+import log.EventLog.Level;
+import log.EventType.Subsystem;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the hot path benchmarks in {@link HiveWorkloads} and publishes the
+ * results as JSON in the layout JMH uses for its <tt>-rf json</tt> output,
+ * so the usual JMH tooling can chart and compare them.  Each benchmark runs
+ * for every thread count, with warmup iterations that are thrown away
+ * followed by measured iterations.  It is run on the command line with:<br>
+ * <br>
+ * <tt>$ java bench.BenchMain [--option=value ...]</tt><br>
+ * <br>
+ * <ul>
+ * <li><tt>--threads=1,2,4,...,512</tt> - the thread counts</li>
+ * <li><tt>--warmup=1</tt> - warmup iterations per trial</li>
+ * <li><tt>--iterations=3</tt> - measured iterations per trial</li>
+ * <li><tt>--time-ms=1000</tt> - the length of each iteration</li>
+ * <li><tt>--include=regex</tt> - only run the benchmarks whose name matches</li>
+ * <li><tt>--result=bench-result.json</tt> - where the JSON goes</li>
+ * <li><tt>--baseline=file.json</tt> - an earlier result to compare with; the
+ * exit status is 1 if any score dropped by more than <tt>--tolerance=10</tt>
+ * percent</li>
+ * </ul>
+ * <br>
+ * Where the JVM can count the bytes each thread allocates, the bytes the
+ * runner threads allocated per operation over the measured iterations are
+ * reported as <tt>gc.alloc.rate.norm</tt>, the name JMH's GC profiler gives
+ * it.  A steady-state hot path should be close to zero.
+ *
+ * @author Isaias Villalobos
+ */
+public class BenchMain {
+    /** the trial is running its warmup or measured iterations */
+    private static final int RUNNING = 0;
+    /** the trial is over */
+    private static final int STOPPED = 1;
+    /** the per-thread counters are this many longs apart to avoid false sharing */
+    private static final int PADDING = 16;
+
+    /** the JVM's thread bean if it counts allocations, or null */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    /** the state of the current trial */
+    private static volatile int state;
+
+    /**
+     * The result of one benchmark at one thread count.
+     */
+    private static class Result {
+        /** the benchmark's name */
+        private final String benchmark;
+        /** the number of threads */
+        private final int threads;
+        /** the throughput of each measured iteration, in operations per second */
+        private final double[] scores;
+        /** the extra metrics */
+        private final Map<String, Double> secondary;
+
+        /**
+         * Create the result.
+         *
+         * @param benchmark the benchmark's name
+         * @param threads the number of threads
+         * @param scores the throughput of each measured iteration
+         * @param secondary the extra metrics
+         */
+        private Result(String benchmark, int threads, double[] scores, Map<String, Double> secondary) {
+            this.benchmark = benchmark;
+            this.threads = threads;
+            this.scores = scores;
+            this.secondary = secondary;
+        }
+
+        /**
+         * The mean throughput.
+         *
+         * @return operations per second
+         */
+        private double score() {
+            double sum = 0;
+            for (double score : this.scores) {
+                sum += score;
+            }
+            return sum / this.scores.length;
+        }
+
+        /**
+         * Half the spread of the measured iterations.
+         *
+         * @return the error in operations per second
+         */
+        private double error() {
+            double min = Double.MAX_VALUE, max = 0;
+            for (double score : this.scores) {
+                min = Math.min(min, score);
+                max = Math.max(max, score);
+            }
+            return (max - min) / 2;
+        }
+
+        /**
+         * The key used to match this result against a baseline.
+         *
+         * @return the key
+         */
+        private String key() {
+            return this.benchmark + "@" + this.threads;
+        }
+    }
+
+    /** no instances */
+    private BenchMain() {
+    }
+
+    /**
+     * Get the thread bean and turn on its allocation counting, if it has any.
+     *
+     * @return the bean, or null if the JVM cannot count allocations
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        return bean;
+    }
+
+    /**
+     * Add up the bytes the runner threads have allocated so far.
+     *
+     * @param ids the runner threads' ids
+     * @return the bytes
+     */
+    private static long allocated(long[] ids) {
+        long sum = 0;
+        for (long bytes : ALLOCATIONS.getThreadAllocatedBytes(ids)) {
+            sum += Math.max(bytes, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Run one benchmark at one thread count.
+     *
+     * @param workload the benchmark
+     * @param threads the number of threads
+     * @param warmup the number of warmup iterations
+     * @param iterations the number of measured iterations
+     * @param timeMs the length of each iteration
+     * @return the result
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static Result trial(Workload workload, int threads, int warmup, int iterations, long timeMs)
+            throws InterruptedException {
+        workload.setUp(threads);
+        AtomicLongArray counts = new AtomicLongArray(threads * PADDING);
+        state = RUNNING;
+        // hold the runners back until they all exist, or starting the last
+        // of hundreds of threads has to compete with the busy ones
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] runners = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int index = t;
+            runners[t] = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long done = 0;
+                while (state == RUNNING) {
+                    workload.operation(index);
+                    counts.lazySet(index * PADDING, ++done);
+                }
+            }, "bench-" + t);
+            runners[t].start();
+        }
+        go.countDown();
+        long[] ids = new long[threads];
+        for (int t = 0; t < threads; ++t) {
+            ids[t] = runners[t].getId();
+        }
+
+        double[] scores = new double[iterations];
+        long measuredOps = 0;
+        long measuredBytes = 0;
+        for (int i = -warmup; i < iterations; ++i) {
+            long before = total(counts, threads);
+            long bytesBefore = ALLOCATIONS == null ? 0 : allocated(ids);
+            long start = System.nanoTime();
+            Thread.sleep(timeMs);
+            long ops = total(counts, threads) - before;
+            long bytes = ALLOCATIONS == null ? 0 : allocated(ids) - bytesBefore;
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (i >= 0) {
+                scores[i] = ops / seconds;
+                measuredOps += ops;
+                measuredBytes += bytes;
+            }
+        }
+
+        state = STOPPED;
+        workload.tearDown();
+        for (Thread runner : runners) {
+            runner.join();
+        }
+        Map<String, Double> secondary = new LinkedHashMap<>(workload.secondaryMetrics());
+        if (ALLOCATIONS != null && measuredOps > 0) {
+            secondary.put("gc.alloc.rate.norm", (double) measuredBytes / measuredOps);
+        }
+        return new Result(workload.name(), threads, scores, secondary);
+    }
+
+    /**
+     * Turn the event log off.
+     */
+    private static void quietLog() {
+        EventLog.configure(Level.OFF, EnumSet.noneOf(Subsystem.class), System.out, false, 0);
+    }
+
+    /**
+     * Add up the per-thread counters.
+     *
+     * @param counts the counters
+     * @param threads the number of threads
+     * @return the total operations
+     */
+    private static long total(AtomicLongArray counts, int threads) {
+        long sum = 0;
+        for (int t = 0; t < threads; ++t) {
+            sum += counts.get(t * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Write the results as JMH style JSON.
+     *
+     * @param results the results
+     * @param warmup the number of warmup iterations
+     * @param iterations the number of measured iterations
+     * @param timeMs the length of each iteration
+     * @return the JSON
+     */
+    private static String toJson(List<Result> results, int warmup, int iterations, long timeMs) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int r = 0; r < results.size(); ++r) {
+            Result result = results.get(r);
+            json.append("    {\n");
+            json.append("        \"benchmark\" : \"bee.").append(result.benchmark).append("\",\n");
+            json.append("        \"mode\" : \"thrpt\",\n");
+            json.append("        \"threads\" : ").append(result.threads).append(",\n");
+            json.append("        \"forks\" : 1,\n");
+            json.append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+            json.append("        \"warmupIterations\" : ").append(warmup).append(",\n");
+            json.append("        \"warmupTime\" : \"").append(timeMs).append(" ms\",\n");
+            json.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+            json.append("        \"measurementTime\" : \"").append(timeMs).append(" ms\",\n");
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(number(result.score())).append(",\n");
+            json.append("            \"scoreError\" : ").append(number(result.error())).append(",\n");
+            json.append("            \"scoreUnit\" : \"ops/s\",\n");
+            json.append("            \"rawData\" : [\n                [\n");
+            for (int i = 0; i < result.scores.length; ++i) {
+                json.append("                    ").append(number(result.scores[i]))
+                        .append(i + 1 < result.scores.length ? ",\n" : "\n");
+            }
+            json.append("                ]\n            ]\n        },\n");
+            json.append("        \"secondaryMetrics\" : {");
+            int m = 0;
+            for (Map.Entry<String, Double> metric : result.secondary.entrySet()) {
+                json.append(m++ == 0 ? "\n" : ",\n");
+                json.append("            \"").append(metric.getKey()).append("\" : {\n");
+                json.append("                \"score\" : ").append(number(metric.getValue())).append("\n");
+                json.append("            }");
+            }
+            json.append(m == 0 ? "}\n" : "\n        }\n");
+            json.append(r + 1 < results.size() ? "    },\n" : "    }\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * Format a number for JSON.
+     *
+     * @param value the number
+     * @return the text
+     */
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Read the scores out of an earlier JSON result.  Only the layout this
+     * class writes is understood.
+     *
+     * @param json the earlier result
+     * @return benchmark@threads to score
+     */
+    private static Map<String, Double> readScores(String json) {
+        Pattern entry = Pattern.compile(
+                "\"benchmark\" : \"bee\\.([^\"]+)\".*?\"threads\" : (\\d+).*?\"score\" : ([0-9.]+)",
+                Pattern.DOTALL);
+        Map<String, Double> scores = new HashMap<>();
+        Matcher matcher = entry.matcher(json);
+        while (matcher.find()) {
+            scores.put(matcher.group(1) + "@" + matcher.group(2), Double.parseDouble(matcher.group(3)));
+        }
+        return scores;
+    }
+
+    /**
+     * Parse the comma separated thread counts.
+     *
+     * @param list the list
+     * @return the thread counts
+     */
+    private static int[] threadCounts(String list) {
+        String[] parts = list.split(",");
+        int[] counts = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            counts[i] = Integer.parseInt(parts[i].trim());
+        }
+        return counts;
+    }
+
+    /**
+     * The main method runs the benchmarks and publishes the results.
+     *
+     * @param args the options
+     * @throws Exception if a benchmark or the result file fails
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (arg.startsWith("--") && equals > 0) {
+                options.put(arg.substring(2, equals), arg.substring(equals + 1));
+            }
+        }
+        int[] threads = threadCounts(options.getOrDefault("threads", "1,2,4,8,16,32,64,128,256,512"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "1"));
+        int iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+        long timeMs = Long.parseLong(options.getOrDefault("time-ms", "1000"));
+        Pattern include = Pattern.compile(options.getOrDefault("include", ".*"));
+        String resultFile = options.getOrDefault("result", "bench-result.json");
+
+        // the benchmarks measure the simulation, not the console
+        quietLog();
+
+        List<Result> results = new ArrayList<>();
+        for (Workload workload : HiveWorkloads.all()) {
+            if (!include.matcher(workload.name()).find()) {
+                continue;
+            }
+            for (int count : workload.isThreaded() ? threads : new int[]{1}) {
+                Result result = trial(workload, count, warmup, iterations, timeMs);
+                // a workload may have turned the log on
+                quietLog();
+                results.add(result);
+                System.out.printf("%-26s %4d threads %16.1f +- %.1f ops/s %s%n", result.benchmark,
+                        result.threads, result.score(), result.error(),
+                        result.secondary.isEmpty() ? "" : result.secondary);
+            }
+        }
+
+        Files.write(Paths.get(resultFile), toJson(results, warmup, iterations, timeMs)
+                .getBytes(StandardCharsets.UTF_8));
+        System.out.println("Results written to " + resultFile);
+
+        if (options.containsKey("baseline")) {
+            double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "10"));
+            Map<String, Double> baseline = readScores(new String(
+                    Files.readAllBytes(Paths.get(options.get("baseline"))), StandardCharsets.UTF_8));
+            boolean regressed = false;
+            for (Result result : results) {
+                Double before = baseline.get(result.key());
+                if (before != null && before > 0) {
+                    double change = (result.score() - before) / before * 100;
+                    boolean worse = change < -tolerance;
+                    regressed |= worse;
+                    System.out.printf("%-26s %4d threads %+7.1f%% %s%n", result.benchmark, result.threads,
+                            change, worse ? "REGRESSION" : "");
+                }
+            }
+            if (regressed) {
+                System.exit(1);
+            }
+        }
+    }
+}
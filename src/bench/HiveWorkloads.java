@@ -0,0 +1,380 @@
+package bench;
+
+import bee.Bee;
+import bee.Bee.Role;
+import bee.Drone;
+import bee.Worker;
+import bee.Worker.Resource;
+import log.EventLog;
+import log.EventLog.Level;
+import log.EventType.Subsystem;
+import world.BeeExecutor;
+import world.BeeHive;
+import world.FlowerField;
+import world.HiveConfig;
+import world.QueensChamber;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The benchmarks for the hot paths of the simulation.
+ *
+ * @author Isaias Villalobos
+ */
+public class HiveWorkloads {
+    /** the load the batched deposit benchmarks compare with one unit per trip */
+    static final int BATCH_LOAD = 4;
+    /** the number of queens the multi-queen benchmark compares with one */
+    static final int QUEENS = 4;
+
+    /** no instances */
+    private HiveWorkloads() {
+    }
+
+    /**
+     * The settings for a hive whose workers carry a load per trip.
+     *
+     * @param load the units per trip
+     * @return the settings
+     */
+    private static Map<String, String> loadOptions(int load) {
+        Map<String, String> options = new HashMap<>();
+        options.put("load", String.valueOf(load));
+        return options;
+    }
+
+    /**
+     * The name of a benchmark, with the load if it is more than one unit.
+     *
+     * @param name the name of the benchmark
+     * @param load the units per trip
+     * @return the name
+     */
+    private static String withLoad(String name, int load) {
+        return load == 1 ? name : name + ".load" + load;
+    }
+
+    /**
+     * All of the benchmarks.
+     *
+     * @return the benchmarks
+     */
+    public static List<Workload> all() {
+        return Arrays.asList(new FieldEnterExit(), new ChamberRoundTrip(), new Deposit(1), new Deposit(BATCH_LOAD),
+                new WorkerTrip(true), new WorkerTrip(false), new EndToEnd(1, 1), new EndToEnd(BATCH_LOAD, 1),
+                new EndToEnd(1, QUEENS));
+    }
+
+    /**
+     * Create the given number of bees for a benchmark.
+     *
+     * @param beeHive the bee hive
+     * @param role the role
+     * @param resource the resource
+     * @param count how many
+     * @return the bees
+     */
+    private static Bee[] bees(BeeHive beeHive, Role role, Resource resource, int count) {
+        Bee[] bees = new Bee[count];
+        for (int i = 0; i < count; ++i) {
+            bees[i] = Bee.createBee(role, resource, beeHive);
+        }
+        return bees;
+    }
+
+    /**
+     * Workers entering and leaving a field with the default capacity.
+     */
+    static class FieldEnterExit implements Workload {
+        /** the field */
+        private FlowerField field;
+        /** one worker per thread */
+        private Bee[] workers;
+
+        @Override
+        public String name() {
+            return "FlowerField.enterExit";
+        }
+
+        @Override
+        public void setUp(int threads) {
+            BeeHive beeHive = new BeeHive(0, 0, 0);
+            this.field = beeHive.getFlowerField();
+            this.workers = bees(beeHive, Role.WORKER, Resource.NECTAR, threads);
+        }
+
+        @Override
+        public void operation(int thread) {
+            Worker worker = (Worker) this.workers[thread];
+            this.field.enterField(worker);
+            this.field.exitField(worker);
+        }
+
+        @Override
+        public void tearDown() {
+            // every operation leaves the field, nobody is left waiting
+        }
+    }
+
+    /**
+     * Drones entering the chamber and being summoned by a queen thread that
+     * never sleeps.  One operation is one drone's full round trip.
+     */
+    static class ChamberRoundTrip implements Workload {
+        /** the chamber */
+        private QueensChamber chamber;
+        /** one drone per thread */
+        private Bee[] drones;
+        /** the summoning thread */
+        private Thread queen;
+        /** tells the queen to stop */
+        private volatile boolean running;
+
+        @Override
+        public String name() {
+            return "QueensChamber.roundTrip";
+        }
+
+        @Override
+        public void setUp(int threads) {
+            BeeHive beeHive = new BeeHive(0, 0, 0);
+            this.chamber = new QueensChamber();
+            this.drones = bees(beeHive, Role.DRONE, Resource.NONE, threads);
+            this.running = true;
+            this.queen = new Thread(() -> {
+                while (this.running) {
+                    if (this.chamber.hasDrone()) {
+                        this.chamber.summonDrone();
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+            }, "bench-queen");
+            this.queen.start();
+        }
+
+        @Override
+        public void operation(int thread) {
+            this.chamber.enterChamber((Drone) this.drones[thread]);
+        }
+
+        @Override
+        public void tearDown() {
+            this.running = false;
+            try {
+                this.queen.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            this.chamber.dismissAllDrones();
+        }
+    }
+
+    /**
+     * Workers depositing into the hive, half nectar and half pollen.  The
+     * units deposited per ledger update are reported alongside.
+     */
+    static class Deposit implements Workload {
+        /** the units a worker deposits per trip */
+        private final int load;
+        /** the hive */
+        private BeeHive beeHive;
+        /** one worker per thread */
+        private Bee[] workers;
+
+        /**
+         * Create the benchmark.
+         *
+         * @param load the units a worker deposits per trip
+         */
+        Deposit(int load) {
+            this.load = load;
+        }
+
+        @Override
+        public String name() {
+            return withLoad("BeeHive.deposit", this.load);
+        }
+
+        @Override
+        public void setUp(int threads) {
+            this.beeHive = new BeeHive(0, 0, 0, new HiveConfig(loadOptions(this.load)));
+            this.workers = new Bee[threads];
+            for (int i = 0; i < threads; ++i) {
+                this.workers[i] = Bee.createBee(Role.WORKER,
+                        i % 2 == 0 ? Resource.NECTAR : Resource.POLLEN, this.beeHive);
+            }
+        }
+
+        @Override
+        public void operation(int thread) {
+            Worker worker = (Worker) this.workers[thread];
+            this.beeHive.deposit(worker.getResource(), worker);
+        }
+
+        @Override
+        public void tearDown() {
+            // deposits never block
+        }
+
+        @Override
+        public Map<String, Double> secondaryMetrics() {
+            long updates = this.beeHive.getDepositUpdates();
+            long units = (long) this.beeHive.getNectarGathered() + this.beeHive.getPollenGathered();
+            return Collections.singletonMap("units/update", updates == 0 ? 0 : (double) units / updates);
+        }
+    }
+
+    /**
+     * Workers making whole trips with every event logged, to a stream that
+     * throws the lines away.  One operation picks a field, enters it, leaves
+     * it and deposits, which is the steady state of a running hive; its
+     * allocation per operation should be close to zero.
+     */
+    static class WorkerTrip implements Workload {
+        /** is the log written from a background thread? */
+        private final boolean async;
+        /** the hive */
+        private BeeHive beeHive;
+        /** one worker per thread */
+        private Bee[] workers;
+
+        /**
+         * Create the benchmark.
+         *
+         * @param async whether the log is written from a background thread
+         */
+        WorkerTrip(boolean async) {
+            this.async = async;
+        }
+
+        @Override
+        public String name() {
+            return this.async ? "BeeHive.workerTrip.logged" : "BeeHive.workerTrip.logged.sync";
+        }
+
+        @Override
+        public void setUp(int threads) {
+            HiveConfig config = new HiveConfig(loadOptions(1));
+            this.beeHive = new BeeHive(0, 0, 0, config);
+            this.workers = new Bee[threads];
+            for (int i = 0; i < threads; ++i) {
+                this.workers[i] = Bee.createBee(Role.WORKER,
+                        i % 2 == 0 ? Resource.NECTAR : Resource.POLLEN, this.beeHive);
+            }
+            EventLog.configure(Level.TRACE, EnumSet.allOf(Subsystem.class), OutputStream.nullOutputStream(),
+                    this.async, config.getLogRingSize());
+        }
+
+        @Override
+        public void operation(int thread) {
+            Worker worker = (Worker) this.workers[thread];
+            FlowerField field = this.beeHive.chooseField();
+            if (field.enterField(worker)) {
+                field.exitField(worker);
+                this.beeHive.deposit(worker.getResource(), worker);
+            }
+        }
+
+        @Override
+        public void tearDown() {
+            // every operation leaves the field; the runners may still be
+            // logging, so BenchMain turns the log off once they are gone
+        }
+    }
+
+    /**
+     * A whole hive on the discrete event engine.  One operation is a fresh
+     * 2-10-10 hive simulated for ten minutes; the births, units deposited and
+     * ledger updates per simulated second are reported alongside.  With
+     * several queens they share one chamber.
+     */
+    static class EndToEnd implements Workload {
+        /** the simulated time of one operation */
+        private static final int SIMULATION_TIME_MS = 600_000;
+
+        /** the units a worker deposits per trip */
+        private final int load;
+        /** the number of queens */
+        private final int queens;
+        /** the bees born over all the operations */
+        private long born;
+        /** the units deposited over all the operations */
+        private long units;
+        /** the ledger updates over all the operations */
+        private long updates;
+        /** the number of operations */
+        private long runs;
+
+        /**
+         * Create the benchmark.
+         *
+         * @param load the units a worker deposits per trip
+         * @param queens the number of queens
+         */
+        EndToEnd(int load, int queens) {
+            this.load = load;
+            this.queens = queens;
+        }
+
+        @Override
+        public String name() {
+            String name = withLoad("BeeHive.endToEnd", this.load);
+            return this.queens == 1 ? name : name + ".queens" + this.queens;
+        }
+
+        @Override
+        public boolean isThreaded() {
+            return false;
+        }
+
+        @Override
+        public void setUp(int threads) {
+            this.born = 0;
+            this.units = 0;
+            this.updates = 0;
+            this.runs = 0;
+        }
+
+        @Override
+        public void operation(int thread) {
+            Map<String, String> options = loadOptions(this.load);
+            options.put("executor", BeeExecutor.EVENT);
+            options.put("queens", String.valueOf(this.queens));
+            BeeHive beeHive = new BeeHive(2, 10, 10, new HiveConfig(options));
+            beeHive.begin();
+            try {
+                beeHive.runFor(SIMULATION_TIME_MS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            beeHive.end();
+            this.born += beeHive.getNumBorn();
+            this.units += (long) beeHive.getNectarGathered() + beeHive.getPollenGathered();
+            this.updates += beeHive.getDepositUpdates();
+            this.runs++;
+        }
+
+        @Override
+        public void tearDown() {
+            // each operation has its own hive
+        }
+
+        @Override
+        public Map<String, Double> secondaryMetrics() {
+            double seconds = this.runs * (SIMULATION_TIME_MS / 1000.0);
+            Map<String, Double> metrics = new LinkedHashMap<>();
+            metrics.put("births/simulated-s", seconds == 0 ? 0 : this.born / seconds);
+            metrics.put("units/simulated-s", seconds == 0 ? 0 : this.units / seconds);
+            metrics.put("ledger-updates/simulated-s", seconds == 0 ? 0 : this.updates / seconds);
+            return metrics;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package bench;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * One benchmark.  A trial sets the workload up for a number of threads, then
+ * each thread calls {@link #operation(int)} in a loop while the runner counts
+ * the calls, and finally the workload is torn down.
+ *
+ * @author Isaias Villalobos
+ */
+public interface Workload {
+    /**
+     * The benchmark's name, as it appears in the results.
+     *
+     * @return the name
+     */
+    String name();
+
+    /**
+     * Does the benchmark take a thread count?  If not it only runs with one
+     * thread.
+     *
+     * @return whether the thread count is a parameter
+     */
+    default boolean isThreaded() {
+        return true;
+    }
+
+    /**
+     * Prepare a trial.
+     *
+     * @param threads the number of threads that will call {@link #operation(int)}
+     */
+    void setUp(int threads);
+
+    /**
+     * Perform one operation.
+     *
+     * @param thread the index of the calling thread, from 0
+     */
+    void operation(int thread);
+
+    /**
+     * End a trial.  Any thread blocked in {@link #operation(int)} must be let go.
+     */
+    void tearDown();
+
+    /**
+     * Extra measurements for the trial that just ended, reported next to the
+     * throughput.
+     *
+     * @return metric name to value
+     */
+    default Map<String, Double> secondaryMetrics() {
+        return Collections.emptyMap();
+    }
+}
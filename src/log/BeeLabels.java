@@ -0,0 +1,39 @@
+package log;
+
+/**
+ * The interned prefixes of the bees' labels, e.g. <tt>"NECTAR WORKER #"</tt>,
+ * one for each role and resource.  A bee's label is its prefix followed by
+ * its id (see {@link bee.Bee#toString()}), so the log keeps a reference to
+ * the shared prefix and the id instead of making a label for every bee.
+ * A prefix is taken from the first bee with its role and resource.
+ *
+ * @author Isaias Villalobos
+ */
+final class BeeLabels {
+    /** the most codes of each kind */
+    private static final int CODES = 16;
+    /** the prefixes, indexed by role code and resource code */
+    private static final String[] PREFIXES = new String[CODES * CODES];
+
+    /** no instances */
+    private BeeLabels() {
+    }
+
+    /**
+     * Get the prefix of a bee's label.  Two threads may work the same
+     * prefix out at once; they get the same interned string.
+     *
+     * @param bee the bee
+     * @return the prefix, up to and including the <tt>#</tt>
+     */
+    static String prefix(TraceSubject bee) {
+        int key = bee.getRoleCode() * CODES + bee.getResourceCode();
+        String prefix = PREFIXES[key];
+        if (prefix == null) {
+            String label = bee.toString();
+            prefix = label.substring(0, label.lastIndexOf('#') + 1).intern();
+            PREFIXES[key] = prefix;
+        }
+        return prefix;
+    }
+}
@@ -0,0 +1,360 @@
+package log;
+
+import log.EventType.Subsystem;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The event log for the simulation.  The bees log typed events here instead
+ * of printing, and the events that pass the level and subsystem filters are
+ * written out in the transcript format.<br>
+ * <br>
+ * Until {@link #configure} is called, events are written synchronously to
+ * standard output, just like the original <tt>System.out.println</tt>
+ * calls.  In asynchronous mode an event is only recorded in a lock-free
+ * ring buffer, and a background writer formats and writes the events in
+ * batches, so no bee ever blocks on console I/O.  Instead of text, the
+ * events can also be written as a binary trace (see {@link #configureTrace}),
+ * which {@link TraceReader} reads back.
+ *
+ * @author Isaias Villalobos
+ */
+public class EventLog {
+    /**
+     * How much is logged.  An event is written if its level is at or above
+     * the configured level.
+     */
+    public enum Level {
+        /** every event, including the field, chamber and deposit traffic */
+        TRACE,
+        /** births, matings, deaths and the hive starting and stopping */
+        INFO,
+        /** nothing */
+        OFF
+    }
+
+    /** the number of events the writer takes in one batch */
+    private static final int BATCH_SIZE = 1024;
+    /** how long the writer parks when the ring is empty */
+    private static final long IDLE_PARK_NS = 1_000_000;
+
+    /** which event types are written, indexed by ordinal */
+    private static volatile boolean[] enabled = enabled(Level.TRACE, EnumSet.allOf(Subsystem.class));
+    /** the ring, or null when writing synchronously */
+    private static volatile EventRing ring;
+    /** the binary trace, or null when writing text */
+    private static volatile TraceWriter trace;
+    /** the writer thread, or null when writing synchronously */
+    private static Thread writerThread;
+    /** where the lines go */
+    private static Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+    /** the stream under it, which the synchronous lines are encoded straight to */
+    private static OutputStream stream = System.out;
+    /** the number of events the writer has written and flushed */
+    private static volatile long written;
+    /** is the writer being asked to stop? */
+    private static volatile boolean closing;
+    /** the line being written synchronously, only used while holding the class lock */
+    private static final StringBuilder syncLine = new StringBuilder(64);
+    /** the characters of that line, grown as needed */
+    private static CharBuffer syncChars = CharBuffer.allocate(64);
+    /** the bytes of that line, grown as needed */
+    private static ByteBuffer syncBytes = ByteBuffer.allocate(128);
+    /** encodes that line */
+    private static final CharsetEncoder syncEncoder = StandardCharsets.UTF_8.newEncoder();
+
+    /** no instances */
+    private EventLog() {
+    }
+
+    /**
+     * Set up the log.  Any previous asynchronous writer is closed first.
+     *
+     * @param level the lowest level written
+     * @param subsystems the subsystems whose events are written
+     * @param output where the lines go
+     * @param async whether to write from a background thread
+     * @param ringSize the minimum number of events the ring buffer holds
+     */
+    public static synchronized void configure(Level level, Set<Subsystem> subsystems,
+                                              OutputStream output, boolean async, int ringSize) {
+        close();
+        enabled = enabled(level, subsystems);
+        out = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+        stream = output;
+        if (async) {
+            EventRing newRing = new EventRing(ringSize);
+            written = 0;
+            closing = false;
+            writerThread = new Thread(() -> writeLoop(newRing), "event-log-writer");
+            writerThread.setDaemon(true);
+            ring = newRing;
+            writerThread.start();
+        }
+    }
+
+    /**
+     * Set up the log to write a binary trace to a memory-mapped file instead
+     * of text.  Any previous log is closed first.
+     *
+     * @param level the lowest level written
+     * @param subsystems the subsystems whose events are written
+     * @param file the trace file, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public static synchronized void configureTrace(Level level, Set<Subsystem> subsystems, Path file)
+            throws IOException {
+        close();
+        trace = new TraceWriter(file);
+        enabled = enabled(level, subsystems);
+    }
+
+    /**
+     * Work out which event types pass the filters.
+     *
+     * @param level the lowest level written
+     * @param subsystems the subsystems whose events are written
+     * @return whether each event type is written, indexed by ordinal
+     */
+    private static boolean[] enabled(Level level, Set<Subsystem> subsystems) {
+        EventType[] types = EventType.values();
+        boolean[] result = new boolean[types.length];
+        for (EventType type : types) {
+            result[type.ordinal()] = level != Level.OFF
+                    && type.getLevel().compareTo(level) >= 0
+                    && subsystems.contains(type.getSubsystem());
+        }
+        return result;
+    }
+
+    /**
+     * Is this type of event written?  Callers can use this to skip work
+     * that only feeds the log.
+     *
+     * @param type the event type
+     * @return whether it is written
+     */
+    public static boolean isEnabled(EventType type) {
+        return enabled[type.ordinal()];
+    }
+
+    /**
+     * Log an event about a bee.
+     *
+     * @param type the event type
+     * @param bee the bee
+     */
+    public static void log(EventType type, Object bee) {
+        log(type, bee, 0);
+    }
+
+    /**
+     * Log an event with a count.
+     *
+     * @param type the event type
+     * @param count the count
+     */
+    public static void log(EventType type, int count) {
+        log(type, null, count);
+    }
+
+    /**
+     * Log an event that is not about any bee.
+     *
+     * @param type the event type
+     */
+    public static void log(EventType type) {
+        log(type, null, 0);
+    }
+
+    /**
+     * Log an event.
+     *
+     * @param type the event type
+     * @param bee the bee, if any
+     * @param count the count, if any
+     */
+    private static void log(EventType type, Object bee, int count) {
+        if (!enabled[type.ordinal()]) {
+            return;
+        }
+        TraceWriter currentTrace = trace;
+        if (currentTrace != null) {
+            currentTrace.record(type, bee, count);
+            return;
+        }
+        // keep the bee's interned label prefix and id rather than the bee,
+        // which may be reused for a newborn before the writer gets to the event
+        String label = null;
+        int id = -1;
+        if (bee instanceof TraceSubject) {
+            label = BeeLabels.prefix((TraceSubject) bee);
+            id = ((TraceSubject) bee).getId();
+        } else if (bee != null) {
+            label = bee.toString();
+        }
+        EventRing current = ring;
+        // a ring closed under the producer turns it away to the synchronous path
+        if (current == null || !current.publish(type, label, id, count)) {
+            synchronized (EventLog.class) {
+                syncLine.setLength(0);
+                type.format(syncLine, label, id, count);
+                syncLine.append(System.lineSeparator());
+                writeSync();
+            }
+        }
+    }
+
+    /**
+     * Wait until every event logged so far has been written out.
+     */
+    public static void flush() {
+        EventRing current = ring;
+        if (current != null) {
+            flush(current);
+        }
+    }
+
+    /**
+     * Wait until every event published to a ring so far has been written out
+     * by the background writer.
+     *
+     * @param current the ring
+     */
+    private static void flush(EventRing current) {
+        long target = current.published();
+        while (written < target && writerThread.isAlive()) {
+            LockSupport.parkNanos(IDLE_PARK_NS);
+        }
+    }
+
+    /**
+     * Write out everything logged so far and stop the background writer,
+     * or close the binary trace.  Later events are written synchronously as
+     * text, as are events a bee logs to the ring while it is closing.  An
+     * event a bee logs to the trace while it is closing is dropped.
+     */
+    public static synchronized void close() {
+        if (trace != null) {
+            TraceWriter done = trace;
+            trace = null;
+            done.close();
+        }
+        if (ring != null) {
+            EventRing done = ring;
+            ring = null;
+            // the writer is still draining, so producers waiting on a full
+            // ring get their slots
+            done.close();
+            flush(done);
+            closing = true;
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            // the writer may have last looked at the ring before the final
+            // events were published, so take whatever it left behind
+            StringBuilder rest = new StringBuilder();
+            while (done.drain(rest, BATCH_SIZE) > 0) {
+                write(rest);
+                rest.setLength(0);
+            }
+            flushOutput();
+            writerThread = null;
+        }
+    }
+
+    /**
+     * The background writer.  It drains the ring in batches, and flushes
+     * the output whenever it catches up.
+     *
+     * @param ring the ring to drain
+     */
+    private static void writeLoop(EventRing ring) {
+        StringBuilder batch = new StringBuilder(BATCH_SIZE * 40);
+        long count = 0;
+        while (true) {
+            int taken = ring.drain(batch, BATCH_SIZE);
+            if (taken > 0) {
+                write(batch);
+                batch.setLength(0);
+                count += taken;
+            } else {
+                flushOutput();
+                written = count;
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NS);
+            }
+        }
+    }
+
+    /**
+     * Write some lines to the output.
+     *
+     * @param lines the lines
+     */
+    private static void write(CharSequence lines) {
+        try {
+            out.append(lines);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Encode the synchronous line into reused buffers and write it straight
+     * to the stream, so that a line costs no garbage.  Only called while
+     * holding the class lock.
+     */
+    private static void writeSync() {
+        int length = syncLine.length();
+        if (length > syncChars.capacity()) {
+            syncChars = CharBuffer.allocate(Math.max(length, syncChars.capacity() * 2));
+            syncBytes = ByteBuffer.allocate(syncChars.capacity() * 2);
+        }
+        syncChars.clear();
+        syncLine.getChars(0, length, syncChars.array(), 0);
+        syncChars.limit(length);
+        syncBytes.clear();
+        syncEncoder.reset();
+        while (syncEncoder.encode(syncChars, syncBytes, true).isOverflow()) {
+            ByteBuffer bigger = ByteBuffer.allocate(syncBytes.capacity() * 2);
+            syncBytes.flip();
+            bigger.put(syncBytes);
+            syncBytes = bigger;
+        }
+        syncEncoder.flush(syncBytes);
+        try {
+            stream.write(syncBytes.array(), 0, syncBytes.position());
+            stream.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Flush the output.
+     */
+    private static void flushOutput() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package log;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of events with many producers (the bees)
+ * and a single consumer (the log writer).  Each slot carries a sequence
+ * number that tells producers when the slot is free and the consumer when it
+ * has been published, so neither side ever takes a lock.  Events are stored
+ * in parallel arrays as primitives and a reference to the bee's interned
+ * label prefix (see {@link BeeLabels}), so publishing an event does not
+ * allocate and the ring never holds on to a bee.<br>
+ * <br>
+ * Once the ring is closed producers are turned away, and closing waits for
+ * the ones still publishing, so the consumer can take every event published
+ * after that.
+ *
+ * @author Isaias Villalobos
+ */
+class EventRing {
+    /** the end of each line */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** the number of slots, a power of 2 */
+    private final int capacity;
+    /** capacity - 1, to turn a position into a slot index */
+    private final int mask;
+    /** the position each slot is ready for */
+    private final AtomicLongArray sequences;
+    /** the event type in each slot */
+    private final EventType[] types;
+    /** the label, or label prefix, of the bee in each slot */
+    private final String[] labels;
+    /** the id of the bee in each slot, or -1 if the label is whole */
+    private final int[] ids;
+    /** the count in each slot */
+    private final int[] counts;
+    /** the next position a producer will claim */
+    private final AtomicLong head;
+    /** the next position the consumer will read, only touched by the consumer */
+    private long tail;
+    /** the producers publishing an event right now */
+    private final AtomicInteger publishers;
+    /** has the ring been closed? */
+    private final AtomicBoolean closed;
+
+    /**
+     * Create the ring.
+     *
+     * @param minCapacity the minimum number of slots, rounded up to a power of 2
+     */
+    EventRing(int minCapacity) {
+        int size = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.types = new EventType[size];
+        this.labels = new String[size];
+        this.ids = new int[size];
+        this.counts = new int[size];
+        this.head = new AtomicLong();
+        this.tail = 0;
+        this.publishers = new AtomicInteger();
+        this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Publish an event, unless the ring is closed.  If the ring is full the
+     * producer spins until the consumer frees a slot, so no events are lost.
+     *
+     * @param type the event type
+     * @param label the bee's label prefix, or its whole label if there is no id, or null
+     * @param id the bee's id, or -1
+     * @param count the count, if any
+     * @return whether the event was published, false if the ring is closed
+     */
+    boolean publish(EventType type, String label, int id, int count) {
+        // counted in before looking at the flag, so close either waits for
+        // this producer or this producer sees the ring closed
+        this.publishers.incrementAndGet();
+        try {
+            if (this.closed.get()) {
+                return false;
+            }
+            claim(type, label, id, count);
+            return true;
+        } finally {
+            this.publishers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claim the next slot and write an event into it.
+     *
+     * @param type the event type
+     * @param label the bee's label prefix, or its whole label if there is no id, or null
+     * @param id the bee's id, or -1
+     * @param count the count, if any
+     */
+    private void claim(EventType type, String label, int id, int count) {
+        long position;
+        int index;
+        while (true) {
+            position = this.head.get();
+            index = (int) position & this.mask;
+            long difference = this.sequences.get(index) - position;
+            if (difference == 0) {
+                if (this.head.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                // full, wait for the writer to catch up
+                Thread.yield();
+            }
+        }
+        this.types[index] = type;
+        this.labels[index] = label;
+        this.ids[index] = id;
+        this.counts[index] = count;
+        this.sequences.set(index, position + 1);
+    }
+
+    /**
+     * Take up to a batch of published events, formatting each one as a
+     * line.  Only the consumer may call this.
+     *
+     * @param out where the lines go
+     * @param maxEvents the most events to take
+     * @return the number of events taken
+     */
+    int drain(StringBuilder out, int maxEvents) {
+        int taken = 0;
+        while (taken < maxEvents) {
+            int index = (int) this.tail & this.mask;
+            if (this.sequences.get(index) != this.tail + 1) {
+                break;
+            }
+            this.types[index].format(out, this.labels[index], this.ids[index], this.counts[index]);
+            out.append(LINE_SEPARATOR);
+            this.sequences.set(index, this.tail + this.capacity);
+            this.tail++;
+            taken++;
+        }
+        return taken;
+    }
+
+    /**
+     * Turn away any more producers and wait for the ones still publishing.
+     * The consumer must keep draining meanwhile, or a producer waiting for a
+     * free slot would never finish.
+     */
+    void close() {
+        this.closed.set(true);
+        while (this.publishers.get() > 0) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * How many events have been claimed by producers so far?
+     *
+     * @return the number of events
+     */
+    long published() {
+        return this.head.get();
+    }
+}
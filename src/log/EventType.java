@@ -0,0 +1,143 @@
+package log;
+
+import log.EventLog.Level;
+
+/**
+ * The kinds of events the simulation logs.  Each event belongs to the
+ * subsystem that displays it and has a level, and knows how to format
+ * itself in the transcript format, e.g.:<br>
+ * <br>
+ * <tt>*FF* NECTAR WORKER #3 enters field</tt><br>
+ * <br>
+ * Formatting happens on the writer's side, so logging an event only
+ * records its type, the bee and a count.
+ *
+ * @author Isaias Villalobos
+ */
+public enum EventType {
+    HIVE_BEGINS(Subsystem.BH, Level.INFO, "Bee hive begins buzzing!"),
+    HIVE_ENDS(Subsystem.BH, Level.INFO, "Bee hive stops buzzing!"),
+    BEE_BORN(Subsystem.BH, Level.INFO, "{bee} is born!"),
+    DEPOSIT(Subsystem.BH, Level.TRACE, "{bee} deposits"),
+    FIELD_ENTER(Subsystem.FF, Level.TRACE, "{bee} enters field"),
+    FIELD_EXIT(Subsystem.FF, Level.TRACE, "{bee} leaves field"),
+    CHAMBER_ENTER(Subsystem.QC, Level.TRACE, "{bee} enters chamber"),
+    CHAMBER_EXIT(Subsystem.QC, Level.TRACE, "{bee} leaves chamber"),
+    MATE(Subsystem.QC, Level.INFO, "Queen mates with {bee}"),
+    BIRTHED(Subsystem.Q, Level.INFO, "Queen birthed {count} children"),
+    PERISHED(Subsystem.D, Level.INFO, "{bee} has perished!");
+
+    /**
+     * The parts of the simulation that log, named after the tag that
+     * starts each of their lines.
+     */
+    public enum Subsystem {
+        /** the flower field */
+        FF,
+        /** the queen's chamber */
+        QC,
+        /** the bee hive */
+        BH,
+        /** the queen */
+        Q,
+        /** the drones */
+        D;
+
+        /** the tag, built once */
+        private final String tag = "*" + name() + "*";
+
+        /**
+         * The tag that starts each line, e.g. <tt>*FF*</tt>.
+         *
+         * @return the tag
+         */
+        public String tag() {
+            return this.tag;
+        }
+    }
+
+    /** who displays the event */
+    private final Subsystem subsystem;
+    /** how important the event is */
+    private final Level level;
+    /** the message with <tt>{bee}</tt> and <tt>{count}</tt> place holders */
+    private final String message;
+
+    /**
+     * Create the event type.
+     *
+     * @param subsystem who displays the event
+     * @param level how important the event is
+     * @param message the message with place holders
+     */
+    EventType(Subsystem subsystem, Level level, String message) {
+        this.subsystem = subsystem;
+        this.level = level;
+        this.message = message;
+    }
+
+    /**
+     * Who displays the event?
+     *
+     * @return the subsystem
+     */
+    public Subsystem getSubsystem() {
+        return this.subsystem;
+    }
+
+    /**
+     * How important is the event?
+     *
+     * @return the level
+     */
+    public Level getLevel() {
+        return this.level;
+    }
+
+    /**
+     * Append the transcript line for an event of this type, without the
+     * line separator.
+     *
+     * @param out where the line goes
+     * @param bee the bee the event is about, if any
+     * @param count the count the event is about, if any
+     */
+    public void format(StringBuilder out, Object bee, int count) {
+        format(out, bee, -1, count);
+    }
+
+    /**
+     * Append the transcript line for an event about a bee whose label is
+     * given as an interned prefix and its id, e.g. <tt>"DRONE #"</tt> and 7,
+     * without making the label.
+     *
+     * @param out where the line goes
+     * @param bee the bee's label, or its label's prefix if there is an id, or null
+     * @param id the bee's id, or -1 if the label is whole
+     * @param count the count the event is about, if any
+     */
+    public void format(StringBuilder out, Object bee, int id, int count) {
+        out.append(this.subsystem.tag()).append(' ');
+        int start = 0;
+        int open = this.message.indexOf('{');
+        while (open >= 0) {
+            int close = this.message.indexOf('}', open);
+            out.append(this.message, start, open);
+            if (this.message.startsWith("bee", open + 1)) {
+                if (bee instanceof CharSequence) {
+                    out.append((CharSequence) bee);
+                } else {
+                    out.append(bee);
+                }
+                if (id >= 0) {
+                    out.append(id);
+                }
+            } else {
+                out.append(count);
+            }
+            start = close + 1;
+            open = this.message.indexOf('{', start);
+        }
+        out.append(this.message, start, this.message.length());
+    }
+}
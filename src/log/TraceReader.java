@@ -0,0 +1,164 @@
+package log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads back a binary trace written by {@link TraceWriter}, one record at a
+ * time.  The file is mapped a region at a time, so a trace of any size is
+ * streamed without loading it and without making an object per record:<br>
+ * <br>
+ * <tt>while (reader.next()) { ... reader.getType() ... }</tt>
+ *
+ * @author Isaias Villalobos
+ */
+public class TraceReader implements Closeable {
+    /** the event types, indexed by ordinal */
+    private static final EventType[] TYPES = EventType.values();
+
+    /** the file */
+    private final FileChannel channel;
+    /** the length of the file */
+    private final long length;
+    /** when the trace started, in epoch milliseconds */
+    private final long startMillis;
+    /** the region being read */
+    private MappedByteBuffer region;
+    /** where the region starts in the file */
+    private long regionStart;
+    /** the position of the current record in the file */
+    private long position;
+
+    /**
+     * Open a trace and read its header.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TraceReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.length = this.channel.size();
+        mapRegion(0);
+        if (this.length < TraceWriter.HEADER_SIZE || this.region.getLong(0) != TraceWriter.MAGIC) {
+            this.channel.close();
+            throw new IOException(path + " is not a bee trace");
+        }
+        if (this.region.getInt(8) != TraceWriter.VERSION || this.region.getInt(12) != TraceWriter.RECORD_SIZE) {
+            this.channel.close();
+            throw new IOException(path + " has an unsupported trace version");
+        }
+        this.startMillis = this.region.getLong(16);
+        this.position = TraceWriter.HEADER_SIZE - TraceWriter.RECORD_SIZE;
+    }
+
+    /**
+     * Map the region that starts at a position.
+     *
+     * @param start the position, a multiple of the region size
+     * @throws IOException if the file cannot be read
+     */
+    private void mapRegion(long start) throws IOException {
+        this.regionStart = start;
+        this.region = this.channel.map(FileChannel.MapMode.READ_ONLY, start,
+                Math.min(TraceWriter.REGION_SIZE, this.length - start));
+    }
+
+    /**
+     * Move to the next record.
+     *
+     * @return whether there is one
+     * @throws IOException if the file cannot be read
+     */
+    public boolean next() throws IOException {
+        long nextPosition = this.position + TraceWriter.RECORD_SIZE;
+        if (nextPosition + TraceWriter.RECORD_SIZE > this.length) {
+            return false;
+        }
+        if (nextPosition >= this.regionStart + TraceWriter.REGION_SIZE) {
+            mapRegion(nextPosition);
+        }
+        this.position = nextPosition;
+        return true;
+    }
+
+    /**
+     * When did the trace start?
+     *
+     * @return the start time in epoch milliseconds
+     */
+    public long getStartMillis() {
+        return this.startMillis;
+    }
+
+    /**
+     * When did the current event happen?
+     *
+     * @return nanoseconds since the start of the trace
+     */
+    public long getTimeNanos() {
+        return this.region.getLong(offset());
+    }
+
+    /**
+     * What type is the current event?
+     *
+     * @return the event type
+     */
+    public EventType getType() {
+        return TYPES[this.region.get(offset() + 12)];
+    }
+
+    /**
+     * Get the current event's bee id, or its count if it is not about a bee.
+     *
+     * @return the id or count
+     */
+    public int getValue() {
+        return this.region.getInt(offset() + 8);
+    }
+
+    /**
+     * Is the current event about a bee?
+     *
+     * @return whether it has a bee
+     */
+    public boolean hasBee() {
+        return getRoleCode() >= 0;
+    }
+
+    /**
+     * Get the current event's bee's role, see {@link TraceSubject#getRoleCode()}.
+     *
+     * @return the role code, or -1 if there is no bee
+     */
+    public int getRoleCode() {
+        return this.region.get(offset() + 13);
+    }
+
+    /**
+     * Get the current event's bee's resource, see {@link TraceSubject#getResourceCode()}.
+     *
+     * @return the resource code, or -1 if there is no bee
+     */
+    public int getResourceCode() {
+        return this.region.get(offset() + 14);
+    }
+
+    /**
+     * Where the current record is in the region.
+     *
+     * @return the offset
+     */
+    private int offset() {
+        return (int) (this.position - this.regionStart);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,31 @@
+package log;
+
+/**
+ * Something an event can be about that the binary trace knows how to
+ * record, i.e. a bee.  The codes are the ordinals of the bee's role and
+ * resource, so the trace can be decoded back to the bee's name.
+ *
+ * @author Isaias Villalobos
+ */
+public interface TraceSubject {
+    /**
+     * Get the bee's unique id.
+     *
+     * @return id
+     */
+    int getId();
+
+    /**
+     * Get the ordinal of the bee's role, see {@link bee.Bee.Role}.
+     *
+     * @return the role code
+     */
+    int getRoleCode();
+
+    /**
+     * Get the ordinal of the bee's resource, see {@link bee.Worker.Resource}.
+     *
+     * @return the resource code
+     */
+    int getResourceCode();
+}
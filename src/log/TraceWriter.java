@@ -0,0 +1,219 @@
+package log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes events as fixed-width binary records to a memory-mapped file.  A
+ * producer claims the position of its record with one atomic add and then
+ * writes the record straight into the mapped pages, so bees never format,
+ * allocate or wait on I/O, and several of them can write at once.  The file
+ * is mapped a region at a time as it grows.<br>
+ * <br>
+ * The file starts with a {@value #HEADER_SIZE} byte header:<br>
+ * <br>
+ * <tt>long magic, int version, int record size, long start time (epoch ms), long 0</tt><br>
+ * <br>
+ * followed by {@value #RECORD_SIZE} byte records:<br>
+ * <br>
+ * <tt>long nanoseconds since the start, int bee id or count, byte event type,
+ * byte role, byte resource, byte 0</tt><br>
+ * <br>
+ * where an event without a bee has -1 for the role and resource.  See
+ * {@link TraceReader} for reading it back.<br>
+ * <br>
+ * Events recorded once the trace is closed are dropped.  Closing waits for
+ * the producers still writing a record, so the file is never cut short of
+ * a record that was claimed.
+ *
+ * @author Isaias Villalobos
+ */
+class TraceWriter {
+    /** identifies a trace file, "BEETRACE" */
+    static final long MAGIC = 0x4245455452414345L;
+    /** the version of the format */
+    static final int VERSION = 1;
+    /** the size of the header */
+    static final int HEADER_SIZE = 32;
+    /** the size of a record */
+    static final int RECORD_SIZE = 16;
+    /** the size of a mapped region, a whole number of records */
+    static final int REGION_SIZE = 1 << 23;
+
+    /** the file */
+    private final FileChannel channel;
+    /** the regions mapped so far, replaced as a whole when one is added */
+    private volatile MappedByteBuffer[] regions;
+    /** guards mapping a region and closing the file, never held while waiting on the producers */
+    private final Object mapLock;
+    /** the position of the next record */
+    private final AtomicLong next;
+    /** when the trace started, for the record times */
+    private final long startNanos;
+    /** the producers writing a record right now */
+    private final AtomicInteger writers;
+    /** has the trace been closed? */
+    private final AtomicBoolean closed;
+
+    /**
+     * Create the trace file, replacing any existing one, and write its header.
+     *
+     * @param path the file
+     * @throws IOException if the file cannot be created
+     */
+    TraceWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.mapLock = new Object();
+        this.closed = new AtomicBoolean();
+        this.regions = new MappedByteBuffer[0];
+        this.startNanos = System.nanoTime();
+        MappedByteBuffer header = region(0);
+        header.putLong(0, MAGIC);
+        header.putInt(8, VERSION);
+        header.putInt(12, RECORD_SIZE);
+        header.putLong(16, System.currentTimeMillis());
+        this.next = new AtomicLong(HEADER_SIZE);
+        this.writers = new AtomicInteger();
+    }
+
+    /**
+     * Record an event, unless the trace is closed.
+     *
+     * @param type the event type
+     * @param bee the bee, if any
+     * @param count the count, if any
+     */
+    void record(EventType type, Object bee, int count) {
+        // counted in before looking at the flag, so close either sees this
+        // writer or this writer sees the trace closed
+        this.writers.incrementAndGet();
+        try {
+            if (!this.closed.get()) {
+                write(type, bee, count);
+            }
+        } finally {
+            this.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Claim the next record and write an event into it.
+     *
+     * @param type the event type
+     * @param bee the bee, if any
+     * @param count the count, if any
+     */
+    private void write(EventType type, Object bee, int count) {
+        long time = System.nanoTime() - this.startNanos;
+        long position = this.next.getAndAdd(RECORD_SIZE);
+        MappedByteBuffer buffer = region((int) (position / REGION_SIZE));
+        if (buffer == null) {
+            // the file was already closed
+            return;
+        }
+        int offset = (int) (position % REGION_SIZE);
+        int value = count;
+        int role = -1;
+        int resource = -1;
+        if (bee instanceof TraceSubject) {
+            TraceSubject subject = (TraceSubject) bee;
+            value = subject.getId();
+            role = subject.getRoleCode();
+            resource = subject.getResourceCode();
+        }
+        buffer.putLong(offset, time);
+        buffer.putInt(offset + 8, value);
+        buffer.put(offset + 12, (byte) type.ordinal());
+        buffer.put(offset + 13, (byte) role);
+        buffer.put(offset + 14, (byte) resource);
+    }
+
+    /**
+     * Get a mapped region, mapping it if no one has yet.
+     *
+     * @param index the region's index
+     * @return the region
+     */
+    private MappedByteBuffer region(int index) {
+        MappedByteBuffer[] current = this.regions;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return map(index);
+    }
+
+    /**
+     * Map a region.  The new array of regions is only published once the
+     * region is in it.  A region is never mapped once the file is closed.
+     *
+     * @param index the region's index
+     * @return the region, or null if the file is closed
+     */
+    private MappedByteBuffer map(int index) {
+        synchronized (this.mapLock) {
+            MappedByteBuffer[] current = this.regions;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            if (this.closed.get() && !this.channel.isOpen()) {
+                return null;
+            }
+            MappedByteBuffer[] grown = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+            try {
+                grown[index] = this.channel.map(FileChannel.MapMode.READ_WRITE, (long) index * REGION_SIZE,
+                        REGION_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // published under the lock, so closing forces and drops it too
+            this.regions = grown;
+            return grown[index];
+        }
+    }
+
+    /**
+     * How many records have been claimed so far?
+     *
+     * @return the number of records
+     */
+    long records() {
+        return (this.next.get() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Stop recording, wait for the records being written, then write the
+     * mapped pages out and cut the file down to the records.  No lock is held
+     * while waiting, since a producer may still have a region to map.
+     */
+    void close() {
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+        while (this.writers.get() > 0) {
+            Thread.yield();
+        }
+        synchronized (this.mapLock) {
+            try {
+                for (MappedByteBuffer region : this.regions) {
+                    if (region != null) {
+                        region.force();
+                    }
+                }
+                this.regions = new MappedByteBuffer[0];
+                this.channel.truncate(this.next.get());
+                this.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
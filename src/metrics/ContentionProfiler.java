@@ -0,0 +1,306 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds out where the bees wait on each other.  It has two sources:<br>
+ * <br>
+ * <ul>
+ * <li>Sync points, the places the hive times explicitly, e.g. a worker
+ * getting a flower.  Each one counts its acquires and adds up how long the
+ * bees waited to get in and how long they held on once in, with the
+ * longest of each.</li>
+ * <li>The JVM's thread contention monitoring, sampled at a fixed interval.
+ * Each sample notes what every blocked or waiting thread is waiting on,
+ * and the threads' blocked and waited times are added up from the last
+ * sample of each thread.  Virtual threads are not seen by the JVM's
+ * thread bean, so with them only the sync points are reported.</li>
+ * </ul>
+ * <br>
+ * The report ranks the sync points by the time waited and the locks by how
+ * often a thread was found waiting on them, so the first line of each is
+ * the one to attack first.  Timing a sync point costs two reads of the
+ * clock and a few striped counters, and nothing at all when the profiler
+ * is off.
+ *
+ * @author Isaias Villalobos
+ */
+public class ContentionProfiler {
+    /** the default time between samples of the threads */
+    public static final long DEFAULT_SAMPLE_MS = 10;
+
+    /**
+     * One place the bees wait on each other.
+     */
+    public static final class SyncPoint {
+        /** the name, e.g. field */
+        private final String name;
+        /** the number of times the point was acquired */
+        private final LongAdder acquires;
+        /** the total time waited to acquire it */
+        private final LongAdder waitedNanos;
+        /** the longest wait */
+        private final LongAccumulator maxWaitNanos;
+        /** the total time it was held */
+        private final LongAdder heldNanos;
+        /** the longest hold */
+        private final LongAccumulator maxHoldNanos;
+
+        /**
+         * Create the sync point.
+         *
+         * @param name the name
+         */
+        private SyncPoint(String name) {
+            this.name = name;
+            this.acquires = new LongAdder();
+            this.waitedNanos = new LongAdder();
+            this.maxWaitNanos = new LongAccumulator(Math::max, 0);
+            this.heldNanos = new LongAdder();
+            this.maxHoldNanos = new LongAccumulator(Math::max, 0);
+        }
+
+        /**
+         * A bee acquired the point.
+         *
+         * @param waitNanos how long it waited
+         */
+        public void acquired(long waitNanos) {
+            this.acquires.increment();
+            this.waitedNanos.add(waitNanos);
+            this.maxWaitNanos.accumulate(waitNanos);
+        }
+
+        /**
+         * A bee let go of the point.
+         *
+         * @param holdNanos how long it held on
+         */
+        public void released(long holdNanos) {
+            this.heldNanos.add(holdNanos);
+            this.maxHoldNanos.accumulate(holdNanos);
+        }
+
+        /**
+         * Get the name.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * How many times was the point acquired?
+         *
+         * @return the acquires
+         */
+        public long getAcquires() {
+            return this.acquires.sum();
+        }
+
+        /**
+         * How long did the bees wait to acquire the point, in total?
+         *
+         * @return the time in nanoseconds
+         */
+        public long getWaitedNanos() {
+            return this.waitedNanos.sum();
+        }
+
+        /**
+         * What was the longest wait?
+         *
+         * @return the time in nanoseconds
+         */
+        public long getMaxWaitNanos() {
+            return this.maxWaitNanos.get();
+        }
+
+        /**
+         * How long did the bees hold the point, in total?
+         *
+         * @return the time in nanoseconds
+         */
+        public long getHeldNanos() {
+            return this.heldNanos.sum();
+        }
+
+        /**
+         * What was the longest hold?
+         *
+         * @return the time in nanoseconds
+         */
+        public long getMaxHoldNanos() {
+            return this.maxHoldNanos.get();
+        }
+    }
+
+    /** the sync points, in the order they were created */
+    private final List<SyncPoint> points;
+    /** the time between samples of the threads */
+    private final long sampleMs;
+    /** the JVM's thread bean, or null if it cannot monitor contention */
+    private final ThreadMXBean threads;
+    /** the number of samples that found a thread waiting on each lock */
+    private final Map<String, LongAdder> lockSamples;
+    /** the last blocked count, blocked time, waited count and waited time seen of each thread */
+    private final Map<Long, long[]> threadTimes;
+    /** the number of samples taken */
+    private final LongAdder samples;
+    /** takes the samples, or null until started */
+    private ScheduledExecutorService sampler;
+
+    /**
+     * Create the profiler.
+     *
+     * @param sampleMs the time between samples of the threads
+     */
+    public ContentionProfiler(long sampleMs) {
+        this.points = new CopyOnWriteArrayList<>();
+        this.sampleMs = sampleMs;
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        this.threads = bean.isThreadContentionMonitoringSupported() ? bean : null;
+        this.lockSamples = new ConcurrentHashMap<>();
+        this.threadTimes = new ConcurrentHashMap<>();
+        this.samples = new LongAdder();
+    }
+
+    /**
+     * Create a sync point.
+     *
+     * @param name the name it is reported by
+     * @return the sync point
+     */
+    public SyncPoint point(String name) {
+        SyncPoint point = new SyncPoint(name);
+        this.points.add(point);
+        return point;
+    }
+
+    /**
+     * Turn on the JVM's contention monitoring and start sampling the threads.
+     */
+    public void start() {
+        if (this.threads == null) {
+            return;
+        }
+        this.threads.setThreadContentionMonitoringEnabled(true);
+        this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "contention-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sampler.scheduleAtFixedRate(this::sample, this.sampleMs, this.sampleMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Note what every thread is waiting on.  Locks are told apart by their
+     * class, since there is one of each per field or chamber.
+     */
+    private void sample() {
+        long self = Thread.currentThread().getId();
+        for (ThreadInfo info : this.threads.getThreadInfo(this.threads.getAllThreadIds())) {
+            if (info == null || info.getThreadId() == self) {
+                continue;
+            }
+            this.threadTimes.put(info.getThreadId(), new long[]{info.getBlockedCount(), info.getBlockedTime(),
+                    info.getWaitedCount(), info.getWaitedTime()});
+            String lock = info.getLockName();
+            if (lock != null) {
+                int hash = lock.indexOf('@');
+                String key = info.getThreadState() + " on " + (hash < 0 ? lock : lock.substring(0, hash));
+                this.lockSamples.computeIfAbsent(key, k -> new LongAdder()).increment();
+            }
+        }
+        this.samples.increment();
+    }
+
+    /**
+     * Take one last sample and stop sampling.
+     */
+    public void close() {
+        if (this.sampler == null) {
+            return;
+        }
+        this.sampler.shutdown();
+        try {
+            this.sampler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        sample();
+        this.threads.setThreadContentionMonitoringEnabled(false);
+    }
+
+    /**
+     * Get the sync points ranked by the time waited, the most first.
+     *
+     * @return the sync points
+     */
+    public List<SyncPoint> getRanked() {
+        List<SyncPoint> ranked = new ArrayList<>(this.points);
+        ranked.sort(Comparator.comparingLong(SyncPoint::getWaitedNanos).reversed());
+        return ranked;
+    }
+
+    /**
+     * Get the number of samples that found a thread waiting on each lock.
+     *
+     * @return the samples by lock
+     */
+    public Map<String, Long> getLockSamples() {
+        Map<String, Long> samples = new HashMap<>();
+        this.lockSamples.forEach((lock, count) -> samples.put(lock, count.sum()));
+        return samples;
+    }
+
+    /**
+     * Print the ranked report.
+     *
+     * @param out where to print it
+     */
+    public void report(PrintStream out) {
+        out.println("\nCONTENTION");
+        out.println("==========");
+        out.printf("%-12s %10s %12s %12s %12s %12s%n",
+                "sync point", "acquires", "waited ms", "max wait ms", "held ms", "max hold ms");
+        for (SyncPoint point : getRanked()) {
+            out.printf("%-12s %10d %12.1f %12.3f %12.1f %12.3f%n", point.getName(), point.getAcquires(),
+                    point.getWaitedNanos() / 1e6, point.getMaxWaitNanos() / 1e6,
+                    point.getHeldNanos() / 1e6, point.getMaxHoldNanos() / 1e6);
+        }
+        long total = this.samples.sum();
+        if (this.threads == null || total == 0) {
+            out.println("No thread samples (contention monitoring is not supported or no samples were taken)");
+            return;
+        }
+        out.println("Threads found waiting in " + total + " samples, every " + this.sampleMs + " ms:");
+        this.lockSamples.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, LongAdder> e) -> e.getValue().sum()).reversed())
+                .forEach(e -> out.printf("  %-70s %8d%n", e.getKey(), e.getValue().sum()));
+        long[] sum = new long[4];
+        for (long[] times : this.threadTimes.values()) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += times[i];
+            }
+        }
+        out.println("Platform threads blocked on monitors " + sum[0] + " times for " + sum[1] + " ms, waited "
+                + sum[2] + " times for " + sum[3] + " ms (sleeping included)");
+    }
+}
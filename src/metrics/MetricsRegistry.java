@@ -0,0 +1,92 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The live metrics of one bee hive.  A metric is either a counter, which
+ * only goes up and is reported with its rate per second, or a gauge, which
+ * is a current level such as the nectar in stock.  Counters that the bees
+ * bump are striped, so updating one never makes bees contend.
+ *
+ * @author Isaias Villalobos
+ */
+public class MetricsRegistry {
+    /** the counters by name */
+    private final Map<String, LongSupplier> counters;
+    /** the gauges by name */
+    private final Map<String, LongSupplier> gauges;
+
+    /**
+     * Create a registry with no metrics.
+     */
+    public MetricsRegistry() {
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Create a counter for the bees to bump.
+     *
+     * @param name the name
+     * @return the counter
+     */
+    public LongAdder counter(String name) {
+        LongAdder adder = new LongAdder();
+        this.counters.put(name, adder::sum);
+        return adder;
+    }
+
+    /**
+     * Register a counter that is kept somewhere else.
+     *
+     * @param name the name
+     * @param total reads the counter, it must never go down
+     */
+    public void counter(String name, LongSupplier total) {
+        this.counters.put(name, total);
+    }
+
+    /**
+     * Register a gauge.
+     *
+     * @param name the name
+     * @param value reads the current level
+     */
+    public void gauge(String name, LongSupplier value) {
+        this.gauges.put(name, value);
+    }
+
+    /**
+     * Read all the counters.
+     *
+     * @return the counters by name, sorted
+     */
+    public Map<String, Long> readCounters() {
+        return read(this.counters);
+    }
+
+    /**
+     * Read all the gauges.
+     *
+     * @return the gauges by name, sorted
+     */
+    public Map<String, Long> readGauges() {
+        return read(this.gauges);
+    }
+
+    /**
+     * Read some metrics.
+     *
+     * @param metrics the metrics
+     * @return the values by name, sorted
+     */
+    private static Map<String, Long> read(Map<String, LongSupplier> metrics) {
+        Map<String, Long> values = new TreeMap<>();
+        metrics.forEach((name, metric) -> values.put(name, metric.getAsLong()));
+        return values;
+    }
+}
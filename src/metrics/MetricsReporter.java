@@ -0,0 +1,133 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes a snapshot of a metrics registry at a fixed interval while the
+ * simulation runs.  Each snapshot is one line of JSON, e.g.:<br>
+ * <br>
+ * <tt>{"elapsed_ms":2000,"births":12,"births_per_s":3.0,"stock.nectar":4}</tt><br>
+ * <br>
+ * Counters are reported with their rate per second since the previous
+ * snapshot.  The snapshots are appended to a file, and/or the latest one is
+ * served at <tt>http://localhost:PORT/metrics</tt> (the server only listens
+ * on the loopback address).
+ *
+ * @author Isaias Villalobos
+ */
+public class MetricsReporter {
+    /** the registry */
+    private final MetricsRegistry registry;
+    /** takes the snapshots */
+    private final ScheduledExecutorService scheduler;
+    /** where the snapshots are appended, or null */
+    private final PrintStream file;
+    /** serves the latest snapshot, or null */
+    private final HttpServer server;
+    /** when reporting started */
+    private final long startNanos;
+    /** the counters in the previous snapshot */
+    private Map<String, Long> previousCounters;
+    /** when the previous snapshot was taken */
+    private long previousNanos;
+    /** the latest snapshot */
+    private volatile String latest;
+
+    /**
+     * Start reporting.
+     *
+     * @param registry the registry
+     * @param intervalMs the time between snapshots
+     * @param file where the snapshots are appended, or null
+     * @param port the local port the latest snapshot is served on, or 0 for none
+     * @throws IOException if the server cannot be started
+     */
+    public MetricsReporter(MetricsRegistry registry, long intervalMs, PrintStream file, int port)
+            throws IOException {
+        this.registry = registry;
+        this.file = file;
+        this.startNanos = System.nanoTime();
+        this.previousNanos = this.startNanos;
+        this.previousCounters = new HashMap<>();
+        this.latest = "{}";
+        if (port > 0) {
+            this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            this.server.createContext("/metrics", exchange -> {
+                byte[] body = (this.latest + "\n").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            this.server.start();
+        } else {
+            this.server = null;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a snapshot and publish it.
+     */
+    private synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = (now - this.previousNanos) / 1e9;
+        Map<String, Long> counters = this.registry.readCounters();
+        StringBuilder json = new StringBuilder("{\"elapsed_ms\":")
+                .append((now - this.startNanos) / 1_000_000);
+        counters.forEach((name, value) -> {
+            long delta = value - this.previousCounters.getOrDefault(name, 0L);
+            json.append(",\"").append(name).append("\":").append(value);
+            json.append(",\"").append(name).append("_per_s\":")
+                    .append(String.format(Locale.ROOT, "%.1f", seconds > 0 ? delta / seconds : 0));
+        });
+        this.registry.readGauges().forEach((name, value) ->
+                json.append(",\"").append(name).append("\":").append(value));
+        json.append('}');
+        this.previousCounters = counters;
+        this.previousNanos = now;
+        this.latest = json.toString();
+        if (this.file != null) {
+            this.file.println(this.latest);
+            this.file.flush();
+        }
+    }
+
+    /**
+     * Take one last snapshot and stop reporting.
+     */
+    public void close() {
+        this.scheduler.shutdown();
+        try {
+            this.scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        report();
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+        if (this.file != null) {
+            this.file.close();
+        }
+    }
+}
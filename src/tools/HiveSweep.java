@@ -0,0 +1,132 @@
+package tools;
+
+import log.EventLog;
+import log.EventLog.Level;
+import log.EventType.Subsystem;
+import world.BeeExecutor;
+import world.BeeHive;
+import world.HiveConfig;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs a grid of simulations side by side in one program and collects the
+ * end of simulation statistics of each into CSV.  Every combination of the
+ * given seconds, drones, nectar workers and pollen workers is one run, with
+ * its own bee hive.  The runs are spread over a fork-join pool with one
+ * thread per core.<br>
+ * <br>
+ * Unless another executor is asked for, the runs use the discrete event
+ * engine: a run then keeps one core busy until it is done instead of
+ * sleeping through the simulation time.  The event log is switched off,
+ * since the transcripts of parallel runs would be interleaved.
+ *
+ * @author Isaias Villalobos
+ */
+public class HiveSweep {
+    /** the CSV header */
+    public static final String HEADER = "seconds,drones,nectar_workers,pollen_workers,seed,"
+            + "bees_born,bees_perished,bees_alive,nectar_gathered,pollen_gathered,nectar_remaining,pollen_remaining,wall_ms,shutdown_ms";
+
+    /** the optional settings shared by all the runs */
+    private final Map<String, String> options;
+    /** the runs */
+    private final List<int[]> grid;
+
+    /**
+     * Create the sweep.
+     *
+     * @param options the optional settings shared by all the runs
+     * @param seconds the simulation times to try
+     * @param drones the numbers of starting drones to try
+     * @param nectarWorkers the numbers of starting nectar workers to try
+     * @param pollenWorkers the numbers of starting pollen workers to try
+     */
+    public HiveSweep(Map<String, String> options, int[] seconds, int[] drones,
+                     int[] nectarWorkers, int[] pollenWorkers) {
+        this.options = new HashMap<>(options);
+        this.options.putIfAbsent("executor", BeeExecutor.EVENT);
+        this.grid = new ArrayList<>();
+        for (int s : seconds) {
+            for (int d : drones) {
+                for (int n : nectarWorkers) {
+                    for (int p : pollenWorkers) {
+                        this.grid.add(new int[]{s, d, n, p});
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a comma separated list of numbers.
+     *
+     * @param list the list, e.g. <tt>10,60,300</tt>
+     * @return the numbers
+     */
+    public static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Run every simulation in the grid and write one CSV line for each, in
+     * grid order.
+     *
+     * @param out where the CSV goes
+     */
+    public void run(PrintStream out) {
+        EventLog.configure(Level.OFF, EnumSet.noneOf(Subsystem.class), System.out, false, 0);
+        HiveConfig config = new HiveConfig(this.options);
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<ForkJoinTask<String>> tasks = new ArrayList<>();
+            for (int[] run : this.grid) {
+                tasks.add(pool.submit(() -> simulate(run, config)));
+            }
+            out.println(HEADER);
+            for (ForkJoinTask<String> task : tasks) {
+                out.println(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Run one simulation.
+     *
+     * @param run seconds, drones, nectar workers and pollen workers
+     * @param config the optional settings
+     * @return the CSV line
+     */
+    private static String simulate(int[] run, HiveConfig config) {
+        long start = System.nanoTime();
+        BeeHive beeHive = new BeeHive(run[1], run[2], run[3], config);
+        beeHive.begin();
+        try {
+            beeHive.runFor(run[0] * 1000L);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        beeHive.end();
+        long wallMs = (System.nanoTime() - start) / 1_000_000;
+        return run[0] + "," + run[1] + "," + run[2] + "," + run[3] + ","
+                + (config.getSeed() == null ? "" : config.getSeed()) + ","
+                + beeHive.getNumBorn() + "," + beeHive.getNumPerished() + "," + beeHive.getNumLive() + ","
+                + beeHive.getNectarGathered() + "," + beeHive.getPollenGathered() + ","
+                + beeHive.getRemainingNectar() + "," + beeHive.getRemainingPollen() + "," + wallMs + ","
+                + beeHive.getShutdownMs();
+    }
+}
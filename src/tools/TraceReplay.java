@@ -0,0 +1,139 @@
+package tools;
+
+import bee.Bee.Role;
+import bee.Worker.Resource;
+import log.EventType;
+import log.TraceReader;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * Decodes a binary trace written with <tt>--log-format=binary</tt>.  It
+ * either regenerates the transcript, line for line as the text log would
+ * have written it:<br>
+ * <br>
+ * <tt>$ java tools.TraceReplay hive.trace</tt><br>
+ * <br>
+ * or streams aggregates straight from the records without making a string
+ * per event:<br>
+ * <br>
+ * <tt>$ java tools.TraceReplay --stats hive.trace</tt>
+ *
+ * @author Isaias Villalobos
+ */
+public class TraceReplay {
+    /** the roles, indexed by ordinal */
+    private static final Role[] ROLES = Role.values();
+    /** the resources, indexed by ordinal */
+    private static final Resource[] RESOURCES = Resource.values();
+    /** the size the transcript is written out in */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** no instances */
+    private TraceReplay() {
+    }
+
+    /**
+     * Write the transcript for a trace.
+     *
+     * @param reader the trace
+     * @param out where the transcript goes
+     * @throws IOException if the trace cannot be read or the transcript written
+     */
+    public static void replay(TraceReader reader, Writer out) throws IOException {
+        StringBuilder lines = new StringBuilder(CHUNK_SIZE + 256);
+        StringBuilder bee = new StringBuilder();
+        String separator = System.lineSeparator();
+        while (reader.next()) {
+            bee.setLength(0);
+            if (reader.hasBee()) {
+                Role role = ROLES[reader.getRoleCode()];
+                if (role == Role.WORKER) {
+                    bee.append(RESOURCES[reader.getResourceCode()].name()).append(' ');
+                }
+                bee.append(role.name()).append(" #").append(reader.getValue());
+            }
+            reader.getType().format(lines, reader.hasBee() ? bee : null, reader.getValue());
+            lines.append(separator);
+            if (lines.length() >= CHUNK_SIZE) {
+                out.append(lines);
+                lines.setLength(0);
+            }
+        }
+        out.append(lines);
+        out.flush();
+    }
+
+    /**
+     * Print the number of events of each type, the deposits of each
+     * resource, the bees born and how long the trace covers.  A deposit is
+     * one worker's trip, whatever load it carried, since the record only
+     * holds the worker.
+     *
+     * @param reader the trace
+     * @param out where the aggregates go
+     * @throws IOException if the trace cannot be read
+     */
+    public static void stats(TraceReader reader, PrintStream out) throws IOException {
+        EventType[] types = EventType.values();
+        long[] events = new long[types.length];
+        long[] deposits = new long[RESOURCES.length];
+        long births = 0;
+        long total = 0;
+        long lastNanos = 0;
+        while (reader.next()) {
+            EventType type = reader.getType();
+            events[type.ordinal()]++;
+            if (type == EventType.DEPOSIT) {
+                deposits[reader.getResourceCode()]++;
+            } else if (type == EventType.BIRTHED) {
+                births += reader.getValue();
+            }
+            lastNanos = reader.getTimeNanos();
+            total++;
+        }
+        out.println("Events: " + total);
+        for (EventType type : types) {
+            out.println("  " + type + ": " + events[type.ordinal()]);
+        }
+        out.println("Nectar deposits: " + deposits[Resource.NECTAR.ordinal()]);
+        out.println("Pollen deposits: " + deposits[Resource.POLLEN.ordinal()]);
+        out.println("Bees birthed by the queen: " + births);
+        out.println("Trace length: " + lastNanos / 1_000_000 + " ms");
+    }
+
+    /**
+     * Decode a trace.
+     *
+     * @param args <tt>[--stats] trace-file</tt>
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        boolean stats = false;
+        String file = null;
+        for (String arg : args) {
+            if (arg.equals("--stats")) {
+                stats = true;
+            } else {
+                file = arg;
+            }
+        }
+        if (file == null) {
+            System.out.println("Usage: java tools.TraceReplay [--stats] trace-file");
+            return;
+        }
+        try (TraceReader reader = new TraceReader(Paths.get(file))) {
+            if (stats) {
+                stats(reader, System.out);
+            } else {
+                replay(reader, new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package tools;
+
+import log.EventType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Re-derives the numbers of one or many transcripts written by the text
+ * log, e.g. the ones kept in <tt>output/</tt>, and checks them against the
+ * <tt>STATISTICS</tt> block at the end of each:<br>
+ * <br>
+ * <tt>$ java tools.TranscriptAnalyzer [--interval=1000] [--bees] output/</tt><br>
+ * <br>
+ * Each transcript is streamed through a small buffer with a file channel
+ * and its lines are matched as bytes against the messages of
+ * {@link EventType}, so no string is made for an event line and a
+ * transcript of any length takes the same memory, apart from a few
+ * counters for each bee.  The transcripts are analyzed in parallel, one
+ * per core, and reported in the order they were given.<br>
+ * <br>
+ * For each transcript it reports the events of each type, per bee
+ * aggregates (trips to the field, deposits, how long a worker stayed in the
+ * field and a drone in the chamber) and per interval aggregates (births,
+ * deaths, deposits and matings).  Transcripts have no timestamps, so
+ * durations and intervals are counted in events.  The cross-check compares
+ * the statistics with what the events add up to; checks whose events were
+ * not logged, e.g. deposits at <tt>--log-level=info</tt>, are skipped.  The
+ * exit status is 1 if any check fails.
+ *
+ * @author Isaias Villalobos
+ */
+public class TranscriptAnalyzer {
+    /** the default number of events in an interval */
+    public static final int DEFAULT_INTERVAL = 1000;
+    /** the size the transcripts are read in */
+    private static final int CHUNK_SIZE = 1 << 16;
+    /** the event types, indexed by ordinal */
+    private static final EventType[] TYPES = EventType.values();
+    /** the bytes each event's line starts with, indexed by ordinal */
+    private static final byte[][] PREFIXES = new byte[TYPES.length][];
+    /** the bytes each event's line ends with, indexed by ordinal */
+    private static final byte[][] SUFFIXES = new byte[TYPES.length][];
+    /** the line the statistics start after */
+    private static final byte[] STATISTICS = ascii("STATISTICS");
+    /** the interval columns */
+    private static final String[] INTERVAL_COLUMNS = {"born", "perished", "nectar", "pollen", "matings", "birthed"};
+
+    static {
+        // the place holder, if any, is where the message changes with the bee or count
+        for (EventType type : TYPES) {
+            StringBuilder first = new StringBuilder();
+            StringBuilder second = new StringBuilder();
+            type.format(first, "0", 0);
+            type.format(second, "1", 1);
+            int hole = 0;
+            while (hole < first.length() && first.charAt(hole) == second.charAt(hole)) {
+                hole++;
+            }
+            PREFIXES[type.ordinal()] = ascii(first.substring(0, hole));
+            SUFFIXES[type.ordinal()] = ascii(hole < first.length() ? first.substring(hole + 1) : "");
+        }
+    }
+
+    /**
+     * What one transcript adds up to.
+     */
+    public static final class Transcript {
+        /** the transcript */
+        private final Path file;
+        /** the number of events in an interval */
+        private final int interval;
+        /** the number of lines */
+        private long lines;
+        /** the number of events */
+        private long events;
+        /** the events of each type */
+        private final long[] eventCounts;
+        /** the nectar deposits */
+        private long nectarDeposits;
+        /** the pollen deposits */
+        private long pollenDeposits;
+        /** the bees the queens birthed */
+        private long birthed;
+        /** the settings and statistics, e.g. "Bees born" to "12" */
+        private final Map<String, String> statistics;
+        /** whether the statistics block has started */
+        private boolean inStatistics;
+        /** each bee's role, by id: 'W', 'D' or 'Q', or 0 if not seen */
+        private byte[] roles;
+        /** each worker's resource, by id: 'N' or 'P' */
+        private byte[] resources;
+        /** each bee's trips to the field or the chamber, by id */
+        private int[] trips;
+        /** each worker's deposits, by id */
+        private int[] deposits;
+        /** the events each bee spent in the field or the chamber, by id */
+        private long[] dwell;
+        /** the event each bee last entered the field or the chamber at, by id, or -1 */
+        private long[] entered;
+        /** the aggregates of each interval so far, see {@link #INTERVAL_COLUMNS} */
+        private final List<long[]> intervals;
+        /** the aggregates of the interval being counted */
+        private long[] current;
+
+        /**
+         * Start adding up a transcript.
+         *
+         * @param file the transcript
+         * @param interval the number of events in an interval
+         */
+        private Transcript(Path file, int interval) {
+            this.file = file;
+            this.interval = interval;
+            this.eventCounts = new long[TYPES.length];
+            this.statistics = new LinkedHashMap<>();
+            this.roles = new byte[64];
+            this.resources = new byte[64];
+            this.trips = new int[64];
+            this.deposits = new int[64];
+            this.dwell = new long[64];
+            this.entered = new long[64];
+            Arrays.fill(this.entered, -1);
+            this.intervals = new ArrayList<>();
+            this.current = new long[INTERVAL_COLUMNS.length];
+        }
+
+        /**
+         * Make room for a bee's counters.
+         *
+         * @param id the bee's id
+         */
+        private void ensureBee(int id) {
+            if (id < this.roles.length) {
+                return;
+            }
+            int size = Math.max(id + 1, this.roles.length * 2);
+            int old = this.entered.length;
+            this.roles = Arrays.copyOf(this.roles, size);
+            this.resources = Arrays.copyOf(this.resources, size);
+            this.trips = Arrays.copyOf(this.trips, size);
+            this.deposits = Arrays.copyOf(this.deposits, size);
+            this.dwell = Arrays.copyOf(this.dwell, size);
+            this.entered = Arrays.copyOf(this.entered, size);
+            Arrays.fill(this.entered, old, size, -1);
+        }
+
+        /**
+         * Add up one line.
+         *
+         * @param line the bytes of the line, without the line separator
+         * @param length the length of the line
+         */
+        private void line(byte[] line, int length) {
+            this.lines++;
+            if (length > 0 && line[0] == '*') {
+                for (EventType type : TYPES) {
+                    byte[] prefix = PREFIXES[type.ordinal()];
+                    byte[] suffix = SUFFIXES[type.ordinal()];
+                    if (length >= prefix.length + suffix.length && matches(line, 0, prefix)
+                            && matches(line, length - suffix.length, suffix)) {
+                        event(type, line, prefix.length, length - suffix.length);
+                        return;
+                    }
+                }
+            } else if (isLine(line, length, STATISTICS)) {
+                this.inStatistics = true;
+            } else {
+                // the settings before the events and the statistics after them
+                String text = new String(line, 0, length, StandardCharsets.US_ASCII);
+                int colon = text.indexOf(": ");
+                if (colon > 0) {
+                    this.statistics.put((this.inStatistics ? "" : "start:") + text.substring(0, colon),
+                            text.substring(colon + 2).trim());
+                }
+            }
+        }
+
+        /**
+         * Add up one event.
+         *
+         * @param type the event's type
+         * @param line the bytes of the line
+         * @param from where the bee or count starts
+         * @param to where the bee or count ends
+         */
+        private void event(EventType type, byte[] line, int from, int to) {
+            this.eventCounts[type.ordinal()]++;
+            int hash = indexOf(line, from, to, (byte) '#');
+            int id = hash < 0 ? -1 : parseInt(line, hash + 1, to);
+            if (id >= 0) {
+                ensureBee(id);
+                if (this.roles[id] == 0) {
+                    // the role is the word before the id, the resource the word before that
+                    this.roles[id] = hash >= from + 2 ? line[lastIndexOf(line, from, hash - 1, (byte) ' ') + 1] : 0;
+                    this.resources[id] = line[from];
+                }
+            }
+            switch (type) {
+                case BEE_BORN:
+                    this.current[0]++;
+                    break;
+                case PERISHED:
+                    this.current[1]++;
+                    break;
+                case DEPOSIT:
+                    if (id >= 0) {
+                        this.deposits[id]++;
+                        if (this.resources[id] == 'N') {
+                            this.nectarDeposits++;
+                            this.current[2]++;
+                        } else {
+                            this.pollenDeposits++;
+                            this.current[3]++;
+                        }
+                    }
+                    break;
+                case MATE:
+                    this.current[4]++;
+                    break;
+                case BIRTHED:
+                    int born = parseInt(line, from, to);
+                    this.birthed += born;
+                    this.current[5] += born;
+                    break;
+                case FIELD_ENTER:
+                case CHAMBER_ENTER:
+                    if (id >= 0) {
+                        this.trips[id]++;
+                        this.entered[id] = this.events;
+                    }
+                    break;
+                case FIELD_EXIT:
+                case CHAMBER_EXIT:
+                    if (id >= 0 && this.entered[id] >= 0) {
+                        this.dwell[id] += this.events - this.entered[id];
+                        this.entered[id] = -1;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (++this.events % this.interval == 0) {
+                this.intervals.add(this.current);
+                this.current = new long[INTERVAL_COLUMNS.length];
+            }
+        }
+
+        /**
+         * Get a number from the statistics.
+         *
+         * @param key the name, e.g. "Bees born"
+         * @return the number, or -1 if it is not there
+         */
+        private long statistic(String key) {
+            String value = this.statistics.get(key);
+            if (value == null) {
+                return -1;
+            }
+            int end = 0;
+            while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                end++;
+            }
+            return end == 0 ? -1 : Long.parseLong(value.substring(0, end));
+        }
+
+        /**
+         * Get a load from the "Deposit trips" statistic, 1 unless it says otherwise.
+         *
+         * @param resource "nectar" or "pollen"
+         * @return the load
+         */
+        private long load(String resource) {
+            String trips = this.statistics.getOrDefault("Deposit trips", "");
+            int at = trips.indexOf(resource + " load ");
+            if (at < 0) {
+                return 1;
+            }
+            int from = at + resource.length() + 6;
+            int to = from;
+            while (to < trips.length() && Character.isDigit(trips.charAt(to))) {
+                to++;
+            }
+            return Long.parseLong(trips.substring(from, to));
+        }
+
+        /**
+         * Compare the statistics with what the events add up to.
+         *
+         * @param out where the checks go
+         * @return the number of checks that failed
+         */
+        public int crossCheck(PrintStream out) {
+            long born = count(EventType.BEE_BORN);
+            long perished = count(EventType.PERISHED);
+            long matings = count(EventType.MATE);
+            boolean traced = count(EventType.FIELD_ENTER) > 0 || count(EventType.DEPOSIT) > 0;
+            long nectar = this.nectarDeposits * load("nectar");
+            long pollen = this.pollenDeposits * load("pollen");
+            long queenMatings = 0;
+            long queenBirths = 0;
+            boolean queens = false;
+            for (Map.Entry<String, String> entry : this.statistics.entrySet()) {
+                if (entry.getKey().startsWith("Queen ") && entry.getValue().startsWith("matings ")) {
+                    String[] parts = entry.getValue().split("[ ,]+");
+                    queenMatings += Long.parseLong(parts[1]);
+                    queenBirths += Long.parseLong(parts[3]);
+                    queens = true;
+                }
+            }
+            if (!this.statistics.containsKey("Bees born")) {
+                out.println("Cross-check: no STATISTICS block");
+                return 0;
+            }
+            out.println("Cross-check against STATISTICS:");
+            int failed = 0;
+            failed += check(out, "Bees born", statistic("Bees born"), born, born > 0);
+            failed += check(out, "Bees perished", statistic("Bees perished"), perished, born > 0);
+            failed += check(out, "Bees alive", statistic("Bees alive"), born - perished, born > 0);
+            failed += check(out, "Nectar gathered", statistic("Nectar gathered"), nectar, traced);
+            failed += check(out, "Pollen gathered", statistic("Pollen gathered"), pollen, traced);
+            // every bee birthed is paid for with one unit of each, and a pairing
+            // the run ended before is given back, so nothing else is spent
+            failed += check(out, "Nectar remaining", statistic("Nectar remaining"), nectar - this.birthed,
+                    traced && matings == count(EventType.BIRTHED));
+            failed += check(out, "Pollen remaining", statistic("Pollen remaining"), pollen - this.birthed,
+                    traced && matings == count(EventType.BIRTHED));
+            failed += check(out, "Deposit trips", statistic("Deposit trips"), count(EventType.DEPOSIT), traced);
+            failed += check(out, "Queen matings", queens ? queenMatings : -1, matings, true);
+            failed += check(out, "Queen births", queens ? queenBirths : -1, this.birthed, true);
+            return failed;
+        }
+
+        /**
+         * Check one statistic.
+         *
+         * @param out where the check goes
+         * @param name the statistic
+         * @param expected the statistic's value, or -1 if it is not there
+         * @param actual what the events add up to
+         * @param logged whether the events it depends on were logged
+         * @return 1 if the check failed, otherwise 0
+         */
+        private static int check(PrintStream out, String name, long expected, long actual, boolean logged) {
+            if (expected < 0) {
+                return 0;
+            }
+            if (!logged) {
+                out.printf("  %-18s %8d  skipped, not in the transcript%n", name + ":", expected);
+                return 0;
+            }
+            boolean ok = expected == actual;
+            out.printf("  %-18s %8d  %s %d%n", name + ":", expected, ok ? "ok" : "MISMATCH, events add up to", actual);
+            return ok ? 0 : 1;
+        }
+
+        /**
+         * How many events of a type are there?
+         *
+         * @param type the type
+         * @return the number of events
+         */
+        public long count(EventType type) {
+            return this.eventCounts[type.ordinal()];
+        }
+
+        /**
+         * Print the aggregates.
+         *
+         * @param out where they go
+         * @param perBee whether to print a line for every bee
+         */
+        public void report(PrintStream out, boolean perBee) {
+            out.println("== " + this.file);
+            out.println("Lines: " + this.lines + ", events: " + this.events);
+            for (EventType type : TYPES) {
+                out.println("  " + type + ": " + count(type));
+            }
+            out.println("Nectar deposits: " + this.nectarDeposits + ", pollen deposits: " + this.pollenDeposits);
+            out.println("Bees birthed by the queens: " + this.birthed);
+            summarize(out, (byte) 'W', "Workers", "trips to the field");
+            summarize(out, (byte) 'D', "Drones", "visits to the chamber");
+            if (perBee) {
+                out.printf("%8s %-6s %-8s %8s %8s %12s%n", "bee", "role", "resource", "trips", "deposits", "dwell/trip");
+                for (int id = 0; id < this.roles.length; id++) {
+                    if (this.roles[id] != 0) {
+                        String resource = this.roles[id] == 'W' ? (this.resources[id] == 'N' ? "NECTAR" : "POLLEN") : "";
+                        out.printf("%8d %-6s %-8s %8d %8d %12.1f%n", id, (char) this.roles[id], resource,
+                                this.trips[id], this.deposits[id],
+                                this.trips[id] == 0 ? 0.0 : (double) this.dwell[id] / this.trips[id]);
+                    }
+                }
+            }
+            out.printf("Intervals of %d events:%n%10s", this.interval, "events");
+            for (String column : INTERVAL_COLUMNS) {
+                out.printf(" %9s", column);
+            }
+            out.println();
+            long start = 0;
+            for (long[] counts : this.intervals) {
+                printInterval(out, start, counts);
+                start += this.interval;
+            }
+            if (this.events > start) {
+                printInterval(out, start, this.current);
+            }
+        }
+
+        /**
+         * Print the aggregates of the bees of one role.
+         *
+         * @param out where they go
+         * @param role the role's letter
+         * @param name the role's name
+         * @param trips what a trip is for the role
+         */
+        private void summarize(PrintStream out, byte role, String name, String trips) {
+            long bees = 0;
+            long total = 0;
+            long most = 0;
+            long dwelt = 0;
+            for (int id = 0; id < this.roles.length; id++) {
+                if (this.roles[id] == role) {
+                    bees++;
+                    total += this.trips[id];
+                    most = Math.max(most, this.trips[id]);
+                    dwelt += this.dwell[id];
+                }
+            }
+            if (bees > 0) {
+                out.printf("%s: %d, %s %d (%.1f each, at most %d), %.1f events per stay%n", name, bees, trips,
+                        total, (double) total / bees, most, total == 0 ? 0.0 : (double) dwelt / total);
+            }
+        }
+
+        /**
+         * Print one interval's aggregates.
+         *
+         * @param out where they go
+         * @param start the first event of the interval
+         * @param counts the aggregates
+         */
+        private static void printInterval(PrintStream out, long start, long[] counts) {
+            out.printf("%10d", start);
+            for (long count : counts) {
+                out.printf(" %9d", count);
+            }
+            out.println();
+        }
+    }
+
+    /** no instances */
+    private TranscriptAnalyzer() {
+    }
+
+    /**
+     * Get the ASCII bytes of a string.
+     *
+     * @param text the string
+     * @return the bytes
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Do some bytes of a line match a pattern?
+     *
+     * @param line the line
+     * @param at where to match
+     * @param pattern the pattern
+     * @return whether they match
+     */
+    private static boolean matches(byte[] line, int at, byte[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            if (line[at + i] != pattern[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Is a line exactly a pattern, ignoring trailing blanks?
+     *
+     * @param line the line
+     * @param length the length of the line
+     * @param pattern the pattern
+     * @return whether it is
+     */
+    private static boolean isLine(byte[] line, int length, byte[] pattern) {
+        while (length > 0 && line[length - 1] == ' ') {
+            length--;
+        }
+        return length == pattern.length && matches(line, 0, pattern);
+    }
+
+    /**
+     * Find a byte.
+     *
+     * @param line the line
+     * @param from where to start looking
+     * @param to where to stop looking
+     * @param b the byte
+     * @return its first index, or -1
+     */
+    private static int indexOf(byte[] line, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find a byte looking backwards.
+     *
+     * @param line the line
+     * @param from the lowest index to look at
+     * @param to the index to start looking at, going down
+     * @param b the byte
+     * @return its last index, or from - 1
+     */
+    private static int lastIndexOf(byte[] line, int from, int to, byte b) {
+        for (int i = to - 1; i >= from; i--) {
+            if (line[i] == b) {
+                return i;
+            }
+        }
+        return from - 1;
+    }
+
+    /**
+     * Read a number.
+     *
+     * @param line the line
+     * @param from where the number starts
+     * @param to where to stop reading
+     * @return the number, 0 if there are no digits
+     */
+    private static int parseInt(byte[] line, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to && line[i] >= '0' && line[i] <= '9'; i++) {
+            value = value * 10 + (line[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Stream a transcript and add it up.
+     *
+     * @param file the transcript
+     * @param interval the number of events in an interval
+     * @return what it adds up to
+     * @throws IOException if the transcript cannot be read
+     */
+    public static Transcript analyze(Path file, int interval) throws IOException {
+        Transcript transcript = new Transcript(file, interval);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        byte[] line = new byte[256];
+        int length = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                byte[] bytes = chunk.array();
+                for (int i = chunk.position(); i < chunk.limit(); i++) {
+                    byte b = bytes[i];
+                    if (b == '\n') {
+                        transcript.line(line, length);
+                        length = 0;
+                    } else if (b != '\r') {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    }
+                }
+                chunk.clear();
+            }
+        }
+        if (length > 0) {
+            transcript.line(line, length);
+        }
+        return transcript;
+    }
+
+    /**
+     * Analyze transcripts.
+     *
+     * @param args <tt>[--interval=N] [--bees] file-or-directory...</tt>
+     * @throws IOException if a directory cannot be listed
+     */
+    public static void main(String[] args) throws IOException {
+        int interval = DEFAULT_INTERVAL;
+        boolean perBee = false;
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--interval=")) {
+                interval = Integer.parseInt(arg.substring("--interval=".length()));
+            } else if (arg.equals("--bees")) {
+                perBee = true;
+            } else if (Files.isDirectory(Paths.get(arg))) {
+                List<Path> listed = new ArrayList<>();
+                try (DirectoryStream<Path> dir = Files.newDirectoryStream(Paths.get(arg), "*.txt")) {
+                    dir.forEach(listed::add);
+                }
+                listed.sort(null);
+                files.addAll(listed);
+            } else {
+                files.add(Paths.get(arg));
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("Usage: java tools.TranscriptAnalyzer [--interval=N] [--bees] file-or-directory...");
+            return;
+        }
+        int events = interval;
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        int failed = 0;
+        try {
+            List<ForkJoinTask<Transcript>> tasks = new ArrayList<>();
+            for (Path file : files) {
+                tasks.add(pool.submit(() -> analyze(file, events)));
+            }
+            for (ForkJoinTask<Transcript> task : tasks) {
+                Transcript transcript = task.join();
+                transcript.report(System.out, perBee);
+                failed += transcript.crossCheck(System.out);
+                System.out.println();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(files.size() + " transcripts, " + failed + " checks failed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of durations with power of 2 buckets.  Bucket
+ * <tt>b</tt> counts durations from <tt>2^(b-1)</tt> up to <tt>2^b</tt>
+ * nanoseconds, which is coarse but costs only a few atomic adds to record.
+ *
+ * @author Isaias Villalobos
+ */
+public class Histogram {
+    /** one bucket per bit of a long */
+    private static final int BUCKETS = 64;
+
+    /** the count in each bucket */
+    private final AtomicLongArray buckets;
+    /** the number of durations recorded */
+    private final AtomicLong count;
+    /** the sum of the durations recorded, in nanoseconds */
+    private final AtomicLong totalNanos;
+    /** the longest duration recorded, in nanoseconds */
+    private final AtomicLong maxNanos;
+
+    /**
+     * Create an empty histogram.
+     */
+    public Histogram() {
+        this.buckets = new AtomicLongArray(BUCKETS);
+        this.count = new AtomicLong();
+        this.totalNanos = new AtomicLong();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos the duration in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        this.buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+        this.count.incrementAndGet();
+        this.totalNanos.addAndGet(value);
+        this.maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * How many durations were recorded?
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * What is the mean duration?
+     *
+     * @return the mean in nanoseconds, or 0 if nothing was recorded
+     */
+    public double getMeanNanos() {
+        long n = this.count.get();
+        return n == 0 ? 0 : (double) this.totalNanos.get() / n;
+    }
+
+    /**
+     * What is the longest duration?
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Estimate a percentile.  The answer is the upper bound of the bucket
+     * the percentile falls in, so it may be up to twice the true value.
+     *
+     * @param percentile between 0 and 100
+     * @return the estimate in nanoseconds
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = this.count.get();
+        long rank = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; ++b) {
+            seen += this.buckets.get(b);
+            if (seen >= rank && seen > 0) {
+                return b == 0 ? 0 : Math.min(1L << b, this.maxNanos.get());
+            }
+        }
+        return this.maxNanos.get();
+    }
+
+    /**
+     * Add everything recorded in another histogram to this one.
+     *
+     * @param other the other histogram
+     */
+    public void add(Histogram other) {
+        for (int b = 0; b < BUCKETS; ++b) {
+            this.buckets.addAndGet(b, other.buckets.get(b));
+        }
+        this.count.addAndGet(other.count.get());
+        this.totalNanos.addAndGet(other.totalNanos.get());
+        this.maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+    }
+
+    /**
+     * Summarize the histogram in milliseconds, e.g.:<br>
+     * <br>
+     * <tt>n=120 mean=3.2ms p50=2.1ms p99=16.8ms max=12.3ms</tt><br>
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms",
+                getCount(), toMs(getMeanNanos()), toMs(getPercentileNanos(50)),
+                toMs(getPercentileNanos(90)), toMs(getPercentileNanos(99)), toMs(getMaxNanos()));
+    }
+
+    /**
+     * Convert nanoseconds to milliseconds.
+     *
+     * @param nanos the nanoseconds
+     * @return the milliseconds
+     */
+    private static double toMs(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -1,28 +1,153 @@
 package util;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * An unseeded random number generator that is suitable for generating random
- * numbers in an inclusive range provided by the caller.
+ * A random number generator that is suitable for generating random
+ * numbers in an inclusive range provided by the caller.<br>
+ * <br>
+ * Each bee that needs random numbers asks for a {@link Stream} of its own.
+ * Unseeded streams draw from the calling thread's generator, so there is no
+ * shared state to contend on.  A seeded stream only depends on the seed and
+ * the bee's id, so a given seed and configuration replays the same
+ * sequence of draws no matter how the threads are scheduled.  The seed is
+ * passed in rather than kept here, so hives running side by side each have
+ * their own.  A seeded stream is the same SplitMix64 generator as
+ * {@link java.util.SplittableRandom}, draw for draw, with its state in a
+ * single long that can be saved and restored.
  *
  * @author Sean Strout @ RIT CS
+ * @author Isaias Villalobos
  */
 public class RandomBee {
-    /** Random number generator usable by all classes */
-    private static Random rand = new Random();
+    /**
+     * A sequence of random numbers for one bee.  It is not thread safe, it
+     * belongs to the bee that asked for it.
+     */
+    public static class Stream {
+        /** whether the stream is seeded, otherwise it uses the calling thread's generator */
+        private final boolean seeded;
+        /** the generator's state */
+        private long state;
+
+        /**
+         * Create the stream.
+         *
+         * @param seeded whether the stream is seeded
+         * @param state the generator's first state
+         */
+        private Stream(boolean seeded, long state) {
+            this.seeded = seeded;
+            this.state = state;
+        }
+
+        /**
+         * Generate a random integer between min and max inclusive.
+         *
+         * @param min the smallest value allowed.
+         * @param max the largest value allowed.
+         * @return A random integer
+         */
+        public int nextInt(int min, int max) {
+            if (!this.seeded) {
+                return ThreadLocalRandom.current().nextInt(min, max + 1);
+            }
+            // the same bounded draw as SplittableRandom.nextInt(origin, bound)
+            int bound = max + 1;
+            int r = next32();
+            int n = bound - min;
+            int m = n - 1;
+            if ((n & m) == 0) {
+                return (r & m) + min;
+            }
+            if (n <= 0) {
+                // the range does not fit in an int, draw until inside it
+                while (r < min || r >= bound) {
+                    r = next32();
+                }
+                return r;
+            }
+            for (int u = r >>> 1; u + m - (r = u % n) < 0; u = next32() >>> 1) {
+                // rejected a draw that would bias the result
+            }
+            return r + min;
+        }
+
+        /**
+         * Advance the generator and scramble its state into 32 bits.
+         *
+         * @return the random bits
+         */
+        private int next32() {
+            long z = (this.state += GOLDEN_GAMMA);
+            z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+            return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+        }
+
+        /**
+         * Get the generator's state, e.g. to save it in a snapshot.
+         *
+         * @return the state, 0 for an unseeded stream
+         */
+        public long getState() {
+            return this.state;
+        }
+
+        /**
+         * Continue the stream from a saved state.  Unseeded streams ignore it.
+         *
+         * @param state the state returned by {@link #getState()}
+         */
+        public void setState(long state) {
+            if (this.seeded) {
+                this.state = state;
+            }
+        }
+    }
+
+    /** the odd increment of the SplitMix64 generator */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Create the stream of random numbers for a bee.
+     *
+     * @param seed the seed, or null for an unseeded stream
+     * @param streamId identifies the stream, e.g. the bee's id
+     * @return the stream
+     */
+    public static Stream stream(Long seed, long streamId) {
+        if (seed == null) {
+            return new Stream(false, 0);
+        }
+        return new Stream(true, mix64(seed + streamId * GOLDEN_GAMMA));
+    }
+
+    /**
+     * Scramble the bits of a value so that nearby seeds and ids give
+     * unrelated streams (the MurmurHash3 finalizer).
+     *
+     * @param z the value
+     * @return the scrambled value
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
 
     /**
      * Generate a random integer between min and max inclusive.  For example: <br>
      * <br>
      * <tt>BeeRandom.nextInt(1, 5): A random number, 1-5</tt><br>
      * <br>
+     * This draws from the calling thread's generator, so it is never
+     * reproducible; use a {@link Stream} for that.
      *
      * @param min the smallest value allowed.
      * @param max the largest value allowed.
      * @return A random integer
      */
     public static int nextInt(int min, int max) {
-        return rand.nextInt(max - min + 1) + min;
+        return ThreadLocalRandom.current().nextInt(min, max + 1);
     }
 }
@@ -0,0 +1,172 @@
+package world;
+
+import bee.Bee;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The strategy the bee hive uses to run each bee's {@link Bee#run()} body.
+ * The original simulation gave every bee its own platform thread, which
+ * runs out of native threads long before a hive reaches 100k bees.  The
+ * supported modes are:<br>
+ * <br>
+ * <ul>
+ * <li><tt>platform</tt> - one platform thread per bee (the default)</li>
+ * <li><tt>virtual</tt> - one virtual thread per bee (Java 21+)</li>
+ * <li><tt>pool</tt> - a cached pool of platform threads shared by all bees</li>
+ * <li><tt>scheduled</tt> - the workers' trips are timer tasks on a few
+ * shared threads, see {@link ScheduledBeeExecutor}</li>
+ * <li><tt>bulk</tt> - the bees are rows of primitive arrays stepped a tick
+ * at a time, see {@link BulkBeeExecutor}</li>
+ * <li><tt>event</tt> - no threads at all, the bees are stepped by a
+ * discrete event engine on a virtual clock</li>
+ * </ul>
+ *
+ * @author Isaias Villalobos
+ */
+public interface BeeExecutor {
+    /** one platform thread per bee */
+    String PLATFORM = "platform";
+    /** one virtual thread per bee */
+    String VIRTUAL = "virtual";
+    /** a cached pool of platform threads */
+    String POOL = "pool";
+    /** the workers' trips are timer tasks on a shared scheduler */
+    String SCHEDULED = "scheduled";
+    /** a discrete event engine on a virtual clock */
+    String EVENT = "event";
+    /** rows of primitive arrays stepped in bulk on a virtual clock */
+    String BULK = "bulk";
+
+    /**
+     * Begin running the bee.  This returns right away, the bee does its
+     * task in the background.
+     *
+     * @param bee the bee to run
+     */
+    void start(Bee bee);
+
+    /**
+     * Wait for every bee that was started to finish its run() body.
+     *
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    void awaitTermination() throws InterruptedException;
+
+    /**
+     * Wait, at most for a while, for every bee that was started to finish
+     * its run() body.  Executors that run nothing in the background finish
+     * right away.
+     *
+     * @param timeoutMs the longest to wait
+     * @return whether every bee finished
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    default boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        awaitTermination();
+        return true;
+    }
+
+    /**
+     * Interrupt every bee that is still running, which makes it stop
+     * waiting or sleeping and finish.  This is how the hive cancels its
+     * bees when it shuts down.
+     */
+    default void cancel() {
+    }
+
+    /**
+     * Get the bees whose run() bodies have not finished.
+     *
+     * @return the labels of the running bees
+     */
+    default List<String> getRunning() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Let the simulation run for the given amount of time.  For threaded
+     * executors the bees run on their own while the caller sleeps on the
+     * hive's clock.
+     *
+     * @param timeMs the simulation time in milliseconds
+     * @param clock the hive's clock, which scales the time to the wall clock
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    default void runFor(long timeMs, SimulationClock clock) throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(clock.toWallNanos(timeMs));
+    }
+
+    /**
+     * How many drones are waiting in a queen's chamber?  Executors that keep
+     * their own lines of drones count those instead.
+     *
+     * @param scheduler the hive's mating scheduler
+     * @param queen the queen's index
+     * @return the number of waiting drones
+     */
+    default int getWaitingDrones(MatingScheduler scheduler, int queen) {
+        return scheduler.getChamber(queen).getQueueLength();
+    }
+
+    /**
+     * How many workers are waiting for a flower in a field?  Executors that
+     * keep their own lines of workers count those instead.
+     *
+     * @param field the field
+     * @param index the field's index
+     * @return the number of waiting workers
+     */
+    default int getWaitingWorkers(FlowerField field, int index) {
+        return field.getWaiting();
+    }
+
+    /**
+     * Add the bees to a snapshot, for executors that keep the bees
+     * themselves instead of as objects (see {@link BeeLifecycle}).  This is
+     * only called when nothing is running.
+     *
+     * @param snapshot the snapshot
+     */
+    default void snapshot(HiveSnapshot snapshot) {
+    }
+
+    /**
+     * Create the executor for a mode given on the command line.  If virtual
+     * threads are not supported by the running JVM, the cached pool is
+     * used instead.
+     *
+     * @param config the optional settings, whose executor mode is one of
+     *               {@link #PLATFORM}, {@link #VIRTUAL}, {@link #POOL},
+     *               {@link #SCHEDULED}, {@link #EVENT} or {@link #BULK}
+     * @param beeHive the bee hive whose bees are executed
+     * @return the executor
+     * @throws IllegalArgumentException if the mode is not known
+     */
+    static BeeExecutor forMode(HiveConfig config, BeeHive beeHive) {
+        String mode = config.getExecutorMode();
+        switch (mode) {
+            case PLATFORM:
+                return ThreadBeeExecutor.platform();
+            case VIRTUAL:
+                BeeExecutor virtual = ThreadBeeExecutor.virtual();
+                if (virtual != null) {
+                    return virtual;
+                }
+                System.err.println("Virtual threads are not supported by this JVM, using the pool executor");
+                return new PooledBeeExecutor();
+            case POOL:
+                return new PooledBeeExecutor();
+            case SCHEDULED:
+                return new ScheduledBeeExecutor(beeHive, config.getSchedulerThreads());
+            case EVENT:
+                return new EventBeeExecutor(beeHive);
+            case BULK:
+                return new BulkBeeExecutor(beeHive, config.getBulkThreads());
+            default:
+                throw new IllegalArgumentException("Unknown executor mode: " + mode);
+        }
+    }
+}
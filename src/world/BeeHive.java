@@ -6,8 +6,21 @@ import bee.Drone;
 import bee.Queen;
 import bee.Worker;
 import bee.Worker.Resource;
+import log.EventLog;
+import log.EventType;
+import metrics.ContentionProfiler;
+import metrics.MetricsRegistry;
+import util.RandomBee;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToLongFunction;
 
 /**
  * The BeeHive is the center of the world for the bees.  It is the place where
@@ -20,46 +33,117 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class BeeHive {
     /**
-     * the field of flowers
+     * the fields of flowers
      */
-    private FlowerField flowerField;
+    private final FlowerField[] flowerFields;
     /**
-     * the queen's chamber
+     * picks the field for each trip
      */
-    private QueensChamber queensChamber;
+    private final FieldRouter fieldRouter;
+    /** how the queens' litters are made up */
+    private final BirthPolicy birthPolicy;
+    /** the load on each field, kept so that picking a field does not allocate */
+    private final IntUnaryOperator fieldLoad;
     /**
-     * the collection of all the bees
+     * the field router's random numbers
      */
-    private ConcurrentLinkedQueue<Bee> bees;
+    private final RandomBee.Stream routerRandom;
     /**
-     * the current amount of nectar in the bee hive
+     * pairs the queens with the drones in their chambers
      */
-    private int nectar;
+    private final MatingScheduler matingScheduler;
     /**
-     * the current amount of pollen in the bee hive
+     * the bees the hive starts with, in the order they are started
      */
-    private int pollen;
+    private List<Bee> bees;
     /**
-     * the total amount of nectar gathered
+     * the bees that are alive, and the perished drones waiting to be reused
      */
-    private int nectarGathered;
+    private final BeeLifecycle lifecycle;
     /**
-     * the total amount of pollen gathered
+     * the nectar and pollen in stock and gathered
      */
-    private int pollenGathered;
+    private final ResourceLedger ledger;
     /**
      * the total number of bees that have been born
      */
-    private int numBorn;
+    private final AtomicInteger numBorn;
     /**
      * the number of bees that have perished
      */
-    private int numPerished;
+    private final AtomicInteger numPerished;
+    /**
+     * the units of nectar a worker deposits after one trip
+     */
+    private final int nectarLoad;
+    /**
+     * the units of pollen a worker deposits after one trip
+     */
+    private final int pollenLoad;
+    /**
+     * profiles where the bees wait on each other, or null
+     */
+    private final ContentionProfiler contention;
+    /**
+     * where the deposits are profiled, or null
+     */
+    private final ContentionProfiler.SyncPoint depositContention;
+    /**
+     * the clock the bees and the main loop sleep on
+     */
+    private final SimulationClock clock;
     /**
      * the bees do their thing while the simulation is active
      */
-    private boolean active;
-    private int numDrones;
+    private volatile boolean active;
+    /**
+     * the id to assign to the next bee created in this hive
+     */
+    private final AtomicInteger nextBeeId;
+    /**
+     * the random seed for this hive's bees, or null if unseeded
+     */
+    private final Long seed;
+    /**
+     * the live metrics
+     */
+    private final MetricsRegistry metrics;
+    /**
+     * runs the bees' tasks
+     */
+    private final BeeExecutor executor;
+    /**
+     * the number of deposits that have started and not finished
+     */
+    private final AtomicInteger depositsInFlight;
+    /**
+     * how long the bees may finish their current step when the simulation ends
+     */
+    private final long shutdownGraceMs;
+    /**
+     * how long the hive waits for its bees when the simulation ends
+     */
+    private final long shutdownDeadlineMs;
+    /**
+     * how long the last shutdown took
+     */
+    private long shutdownNanos;
+    /**
+     * the bees that were still running when the last shutdown gave up on them
+     */
+    private List<String> stillRunning;
+    /**
+     * the simulated time the hive has run for, including a restored hive's
+     */
+    private long elapsedMs;
+    /**
+     * whether to take a snapshot when the simulation ends
+     */
+    private final boolean takeSnapshot;
+    /**
+     * the snapshot taken when the simulation ended, or null
+     */
+    private HiveSnapshot snapshot;
 
     /**
      * Create the bee hive.  You should create the flower field and the queen's
@@ -72,12 +156,22 @@ public class BeeHive {
      * @param numPollenWorkers number of starting pollen workers
      */
     public BeeHive(int numDrones, int numNectarWorkers, int numPollenWorkers) {
-//        this.numDrones = numDrones;
-        this.flowerField = new FlowerField();
-        this.queensChamber = new QueensChamber();
-        this.bees = new ConcurrentLinkedQueue<>();
-        this.nectar = this.pollen = 0;
-        this.bees.add(Bee.createBee(Role.QUEEN, Resource.NONE, this));
+        this(numDrones, numNectarWorkers, numPollenWorkers, new HiveConfig());
+    }
+
+    /**
+     * Create the bee hive with optional settings.
+     *
+     * @param numDrones        number of starting drones
+     * @param numNectarWorkers number of starting nectar workers
+     * @param numPollenWorkers number of starting pollen workers
+     * @param config           the optional settings
+     */
+    public BeeHive(int numDrones, int numNectarWorkers, int numPollenWorkers, HiveConfig config) {
+        this(config, config.getQueens());
+        for (int i = 0; i < config.getQueens(); ++i) {
+            this.bees.add(Bee.createBee(Role.QUEEN, Resource.NONE, this));
+        }
         // create the bees!
 
         for (int i = 0; i < numDrones; ++i) {
@@ -91,29 +185,309 @@ public class BeeHive {
         }
 
 
+        this.bees.forEach(this.lifecycle::born);
+        this.numBorn.set(this.bees.size());
+    }
+
+    /**
+     * Create the bee hive from a snapshot of another one, so that it picks
+     * up where that one left off.  The bees keep their ids and are started
+     * in an order that puts them back where they were: the queens first,
+     * then the workers that were gathering, the drones in the order they
+     * were waiting in the chambers, and the rest of the bees.  If the
+     * settings ask for more queens than the snapshot has, the new queens
+     * are born after them.  The other settings, e.g. the executor, the
+     * fields or the seed, may differ from the run that took the snapshot.
+     *
+     * @param snapshot the snapshot
+     * @param config   the optional settings
+     */
+    public BeeHive(HiveSnapshot snapshot, HiveConfig config) {
+        this(config, Math.max(config.getQueens(), snapshot.getQueens().size()));
+        this.elapsedMs = snapshot.getElapsedMs();
+        this.ledger.restore(snapshot.getNectar(), snapshot.getPollen(), snapshot.getNectarGathered(),
+                snapshot.getPollenGathered(), snapshot.getDepositUpdates());
+        this.routerRandom.setState(snapshot.getRouterRandom());
+        boolean[] restored = new boolean[snapshot.getNumBees()];
+        for (long[] queen : snapshot.getQueens()) {
+            int i = snapshot.indexOf((int) queen[0]);
+            if (i >= 0) {
+                Queen bee = (Queen) restoreBee(snapshot, i, restored);
+                bee.getRandom().setState(queen[1]);
+            }
+        }
+        for (int i = 0; i < snapshot.getNumBees(); i++) {
+            int field = snapshot.getField(i);
+            if (snapshot.getRole(i) == Role.WORKER && field >= 0 && field < this.flowerFields.length) {
+                ((Worker) restoreBee(snapshot, i, restored)).setFlowerField(this.flowerFields[field]);
+            }
+        }
+        for (int[] chamber : snapshot.getChambers()) {
+            for (int id : chamber) {
+                int i = snapshot.indexOf(id);
+                if (i >= 0 && !restored[i]) {
+                    restoreBee(snapshot, i, restored);
+                }
+            }
+        }
+        for (int i = 0; i < snapshot.getNumBees(); i++) {
+            if (!restored[i]) {
+                restoreBee(snapshot, i, restored);
+            }
+        }
+        this.nextBeeId.set(snapshot.getNextBeeId());
+        for (int i = snapshot.getQueens().size(); i < this.matingScheduler.getQueenCount(); ++i) {
+            this.bees.add(Bee.createBee(Role.QUEEN, Resource.NONE, this));
+        }
+        this.bees.forEach(this.lifecycle::born);
+        this.numBorn.set(snapshot.getNumBorn() + this.bees.size() - snapshot.getNumBees());
+        this.numPerished.set(snapshot.getNumPerished());
+    }
+
+    /**
+     * Put one of a snapshot's bees back in the hive, with its old id.
+     *
+     * @param snapshot the snapshot
+     * @param index    the bee's index in the snapshot
+     * @param restored which of the snapshot's bees are back already
+     * @return the bee
+     */
+    private Bee restoreBee(HiveSnapshot snapshot, int index, boolean[] restored) {
+        this.nextBeeId.set(snapshot.getId(index));
+        Bee bee = Bee.restoreBee(snapshot.getRole(index), snapshot.getResource(index), this);
+        this.bees.add(bee);
+        restored[index] = true;
+        return bee;
+    }
+
+    /**
+     * Create everything but the bees.
+     *
+     * @param config the optional settings
+     * @param queens the number of queens
+     */
+    private BeeHive(HiveConfig config, int queens) {
+        this.nextBeeId = new AtomicInteger(1);
+        this.seed = config.getSeed();
+        this.nectarLoad = config.getNectarLoad();
+        this.pollenLoad = config.getPollenLoad();
+        this.depositsInFlight = new AtomicInteger();
+        this.shutdownGraceMs = config.getShutdownGraceMs();
+        this.shutdownDeadlineMs = config.getShutdownDeadlineMs();
+        this.stillRunning = Collections.emptyList();
+        this.takeSnapshot = config.getSnapshotFile() != null;
+        this.clock = new SimulationClock(config.getTimeScale());
+        this.contention = config.isContention() ? new ContentionProfiler(config.getContentionSampleMs()) : null;
+        this.depositContention = this.contention == null ? null : this.contention.point("deposit");
+        this.metrics = new MetricsRegistry();
+        FieldWaitStats fieldWaitStats = config.isFieldStats() ? new FieldWaitStats() : null;
+        LongAdder fieldBlockedNanos = config.isMetrics() ? this.metrics.counter("field.blocked_ns") : null;
+        this.flowerFields = new FlowerField[config.getFieldCount()];
+        for (int i = 0; i < this.flowerFields.length; i++) {
+            int capacity = config.getFieldCapacity(i);
+            this.flowerFields[i] = new FlowerField(capacity,
+                    FieldAdmission.forPolicy(config.getFieldPolicy(), capacity), fieldWaitStats, fieldBlockedNanos,
+                    this.contention == null ? null
+                            : this.contention.point(this.flowerFields.length > 1 ? "field[" + i + "]" : "field"));
+        }
+        // the router's stream is kept apart from the bees', whose ids start at 1
+        this.routerRandom = randomStream(0);
+        this.fieldRouter = FieldRouter.forStrategy(config.getFieldRoute(), this.routerRandom);
+        this.fieldLoad = i -> this.flowerFields[i].getLoad();
+        this.birthPolicy = BirthPolicy.forName(config.getBirthPolicy());
+        this.ledger = new ResourceLedger();
         this.active = true;
-        this.numBorn = this.bees.size();
-        this.numPerished = 0;
-        this.nectarGathered = this.pollenGathered = 0;
+        this.matingScheduler = new MatingScheduler(queens, config.isChambersSharded(),
+                config.isQueenSpin(), this.ledger, this::isActive,
+                config.isMetrics() ? this.metrics.counter("chamber.blocked_ns") : null, this.contention);
+        this.executor = BeeExecutor.forMode(config, this);
+        // a bulk executor keeps its bees in rows, the objects are only passed along
+        this.lifecycle = new BeeLifecycle(config.getBeePoolSize(),
+                !BeeExecutor.BULK.equals(config.getExecutorMode()));
+        this.bees = new ArrayList<>();
+        this.numBorn = new AtomicInteger();
+        this.numPerished = new AtomicInteger();
+        registerMetrics();
+    }
+
+    /**
+     * Register the hive's counters and gauges.  They read state the hive
+     * keeps anyway, so they cost the bees nothing.
+     */
+    private void registerMetrics() {
+        this.metrics.counter("deposits.nectar", this.ledger::getNectarGathered);
+        this.metrics.counter("deposits.pollen", this.ledger::getPollenGathered);
+        this.metrics.counter("ledger.updates", this.ledger::getDepositUpdates);
+        this.metrics.counter("births", this.numBorn::get);
+        this.metrics.counter("deaths", this.numPerished::get);
+        this.metrics.counter("queen.idle_ns", this.matingScheduler::getIdleNanos);
+        this.metrics.counter("births.recycled", this.lifecycle::getRecycled);
+        this.metrics.gauge("bees.live", this.lifecycle::getLive);
+        this.metrics.gauge("stock.nectar", this.ledger::getNectar);
+        this.metrics.gauge("stock.pollen", this.ledger::getPollen);
+        this.metrics.gauge("field.occupancy", () -> sumFields(FlowerField::getOccupancy));
+        this.metrics.gauge("field.waiting", () -> sumFields(FlowerField::getWaiting));
+        if (this.flowerFields.length > 1) {
+            for (int i = 0; i < this.flowerFields.length; i++) {
+                this.metrics.counter("field." + (i + 1) + ".trips", this.flowerFields[i]::getTrips);
+                this.metrics.gauge("field." + (i + 1) + ".occupancy", this.flowerFields[i]::getOccupancy);
+            }
+        }
+        this.metrics.gauge("chamber.queue", this.matingScheduler::getQueueLength);
+        if (this.matingScheduler.getQueenCount() > 1) {
+            this.metrics.counter("matings.missed", this.matingScheduler::getMissedPairings);
+            for (int i = 0; i < this.matingScheduler.getQueenCount(); i++) {
+                int queen = i;
+                this.metrics.counter("queen." + (i + 1) + ".births", () -> this.matingScheduler.getBirths(queen));
+            }
+        }
+    }
+
+    /**
+     * Get the live metrics.
+     *
+     * @return the metrics
+     */
+    public MetricsRegistry getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Hand out the id for a bee being created in this hive.  Ids start at 1.
+     *
+     * @return the id
+     */
+    public int nextBeeId() {
+        return this.nextBeeId.getAndIncrement();
+    }
+
+    /**
+     * Create a stream of random numbers for one of this hive's bees.  When
+     * the hive is seeded the stream only depends on the seed and the id.
+     *
+     * @param streamId identifies the stream, e.g. the bee's id
+     * @return the stream
+     */
+    public RandomBee.Stream randomStream(long streamId) {
+        return RandomBee.stream(this.seed, streamId);
     }
 
     /**
-     * Get the flower field.  Having this here reduces the amount of passing we have to do.
+     * Add up something about every field.
+     *
+     * @param value the value of one field
+     * @return the total
+     */
+    private long sumFields(ToLongFunction<FlowerField> value) {
+        long total = 0;
+        for (FlowerField field : this.flowerFields) {
+            total += value.applyAsLong(field);
+        }
+        return total;
+    }
+
+    /**
+     * Get the first flower field.  Having this here reduces the amount of passing we have to do.
      * The worker bees who need the field can get it from the bee hive.
      *
      * @return the field of flowers
      */
     public FlowerField getFlowerField() {
-        return this.flowerField;
+        return this.flowerFields[0];
+    }
+
+    /**
+     * Get all the flower fields, in order.
+     *
+     * @return the fields of flowers
+     */
+    public List<FlowerField> getFlowerFields() {
+        return Collections.unmodifiableList(Arrays.asList(this.flowerFields));
+    }
+
+    /**
+     * Pick the field a worker heads to on its next trip.
+     *
+     * @return the field of flowers
+     */
+    public FlowerField chooseField() {
+        if (this.flowerFields.length == 1) {
+            return this.flowerFields[0];
+        }
+        return this.flowerFields[this.fieldRouter.route(this.flowerFields.length, this.fieldLoad)];
+    }
+
+    /**
+     * Get the router that picks the field for each trip, for executors that
+     * keep their own lines of waiting workers.
+     *
+     * @return the router
+     */
+    FieldRouter getFieldRouter() {
+        return this.fieldRouter;
     }
 
     /**
-     * Get the queen's chamber.  The queen bee and the drones need to be aware of this.
+     * Get the first queen's chamber, which all the queens mate in unless
+     * the chambers are sharded.
      *
      * @return the queen's chamber
      */
     public QueensChamber getQueensChamber() {
-        return this.queensChamber;
+        return this.matingScheduler.getChamber(0);
+    }
+
+    /**
+     * Pick the chamber a drone enters.  The queens and the drones need to be aware of this.
+     *
+     * @param drone the drone
+     * @return the queen's chamber
+     */
+    public QueensChamber chooseChamber(Drone drone) {
+        return this.matingScheduler.chooseChamber(drone);
+    }
+
+    /**
+     * Get the scheduler that pairs the queens with the drones.
+     *
+     * @return the mating scheduler
+     */
+    public MatingScheduler getMatingScheduler() {
+        return this.matingScheduler;
+    }
+
+    /**
+     * Get the policy the queens give birth by.
+     *
+     * @return the birth policy
+     */
+    public BirthPolicy getBirthPolicy() {
+        return this.birthPolicy;
+    }
+
+    /**
+     * How many workers are gathering in or waiting for a field?  Unlike
+     * {@link FlowerField#getLoad()} this counts the workers waiting in the
+     * lines of executors that keep their own.
+     *
+     * @param field the field's index
+     * @return the load
+     */
+    public int getFieldLoad(int field) {
+        FlowerField flowerField = this.flowerFields[field];
+        return flowerField.getOccupancy() + this.executor.getWaitingWorkers(flowerField, field);
+    }
+
+    /**
+     * How many drones are waiting in a queen's chamber?  This walks the
+     * chamber's line, so it is meant for decisions like the size of a
+     * litter rather than the mating path.
+     *
+     * @param queen the queen's index, see {@link MatingScheduler#enlist()}
+     * @return the number of waiting drones
+     */
+    public int getWaitingDrones(int queen) {
+        return this.executor.getWaitingDrones(this.matingScheduler, queen);
     }
 
     /**
@@ -122,7 +496,7 @@ public class BeeHive {
      * @return total born
      */
     public int getNumBorn() {
-        return this.numBorn;
+        return this.numBorn.get();
     }
 
     /**
@@ -131,7 +505,34 @@ public class BeeHive {
      * @return amount perished
      */
     public int getNumPerished() {
-        return this.numPerished;
+        return this.numPerished.get();
+    }
+
+    /**
+     * How many bees are alive, i.e. born and not perished?
+     *
+     * @return the live bees
+     */
+    public int getNumLive() {
+        return this.lifecycle.getLive();
+    }
+
+    /**
+     * How many births reused a perished drone instead of a new bee?
+     *
+     * @return the recycled births
+     */
+    public long getNumRecycled() {
+        return this.lifecycle.getRecycled();
+    }
+
+    /**
+     * Take a perished drone so it can be born again, see {@link Bee#createBee}.
+     *
+     * @return the drone, or null if there is none to reuse
+     */
+    public Drone reuseDrone() {
+        return this.lifecycle.reuseDrone();
     }
 
     /**
@@ -140,7 +541,7 @@ public class BeeHive {
      * @return nectar remaining
      */
     public int getRemainingNectar() {
-        return this.nectar;
+        return this.ledger.getNectar();
     }
 
     /**
@@ -149,7 +550,7 @@ public class BeeHive {
      * @return pollen remaining
      */
     public int getRemainingPollen() {
-        return this.pollen;
+        return this.ledger.getPollen();
     }
 
     /**
@@ -158,7 +559,7 @@ public class BeeHive {
      * @return total nectar gathered
      */
     public int getNectarGathered() {
-        return this.nectarGathered;
+        return this.ledger.getNectarGathered();
     }
 
     /**
@@ -167,7 +568,34 @@ public class BeeHive {
      * @return total pollen gathered
      */
     public int getPollenGathered() {
-        return this.pollenGathered;
+        return this.ledger.getPollenGathered();
+    }
+
+    /**
+     * How many times did a deposit update the hive's stock?  This is one per
+     * trip to the field, however many units the worker carried.
+     *
+     * @return the number of deposits
+     */
+    public long getDepositUpdates() {
+        return this.ledger.getDepositUpdates();
+    }
+
+    /**
+     * How many units of a resource does a worker carry back from one trip?
+     *
+     * @param resource the resource
+     * @return the load, 0 for NONE
+     */
+    public int getLoad(Resource resource) {
+        switch (resource) {
+            case NECTAR:
+                return this.nectarLoad;
+            case POLLEN:
+                return this.pollenLoad;
+            default:
+                return 0;
+        }
     }
 
     /**
@@ -191,10 +619,53 @@ public class BeeHive {
      * @rit.post All the bees have been signaled to begin running
      */
     public void begin() {
-        System.out.println("*BH* Bee hive begins buzzing!");
-        bees.forEach(Bee::start);
+        EventLog.log(EventType.HIVE_BEGINS);
+        if (this.contention != null) {
+            this.contention.start();
+        }
+        bees.forEach(this.executor::start);
+        // from here on the live set is all the hive needs
+        this.bees = null;
+    }
+
+    /**
+     * Let the bees do their thing for the simulation time.  Depending on the
+     * executor this either waits on the wall clock or advances a virtual one.
+     *
+     * @param timeMs the simulation time in milliseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void runFor(long timeMs) throws InterruptedException {
+        this.clock.run(this.executor, timeMs);
+        this.elapsedMs += timeMs;
+    }
 
+    /**
+     * Get the contention profiler.
+     *
+     * @return the profiler, or null if contention is not being profiled
+     */
+    public ContentionProfiler getContention() {
+        return this.contention;
+    }
+
+    /**
+     * Get the clock the bees and the main loop sleep on.
+     *
+     * @return the clock
+     */
+    public SimulationClock getClock() {
+        return this.clock;
+    }
 
+    /**
+     * How long has the hive run for?  A restored hive counts the time of
+     * the run it was restored from.
+     *
+     * @return the simulated time in milliseconds
+     */
+    public long getElapsedMs() {
+        return this.elapsedMs;
     }
 
     /**
@@ -204,29 +675,143 @@ public class BeeHive {
      * <br>
      * <tt>*BH* Bee hive stops buzzing!</tt><br>
      * <br>
+     * Shutting down takes a bounded time:<br>
+     * <ol>
+     * <li>The switch is flipped, the queens are woken and the drones waiting
+     * in line are dismissed.</li>
+     * <li>Deposits that already started are let finish, so the statistics
+     * include them; no deposit starts after the switch.</li>
+     * <li>The bees get the grace period to finish what they are doing, and
+     * the ones still running are then interrupted, which every place a bee
+     * waits or sleeps takes as being cancelled.</li>
+     * <li>Bees still running at the deadline are left behind and reported,
+     * see {@link #getStillRunning()}.</li>
+     * </ol>
      *
      * @rit.pre The bees are either running or have completed their task,
      * e.g. the drones that mated have perished.
-     * @rit.post All the bees have been finished running
+     * @rit.post All the bees have been finished running, or are reported
+     * as still running
      */
     public void end() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(this.shutdownDeadlineMs);
         // flip the switch
         this.active = false;
-        for (Bee b : bees) {
-            try {
-                b.join();
-            } catch (InterruptedException e) {
+        this.matingScheduler.signalAll();
+        while (this.depositsInFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        if (this.takeSnapshot) {
+            this.snapshot = capture();
+        }
+        this.matingScheduler.dismissAllDrones();
+        try {
+            if (!this.executor.awaitTermination(Math.min(this.shutdownGraceMs, this.shutdownDeadlineMs))) {
+                this.executor.cancel();
+                long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (!this.executor.awaitTermination(Math.max(0, left))) {
+                    this.stillRunning = this.executor.getRunning();
+                }
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        this.shutdownNanos = System.nanoTime() - start;
+        if (this.contention != null) {
+            this.contention.close();
+        }
+        EventLog.log(EventType.HIVE_ENDS);
+    }
+
+    /**
+     * Take a snapshot of the hive as it is, see {@link HiveSnapshot}.
+     *
+     * @return the snapshot
+     */
+    private HiveSnapshot capture() {
+        HiveSnapshot s = new HiveSnapshot();
+        s.setCounters(this.elapsedMs, this.nextBeeId.get(), this.numBorn.get(), this.numPerished.get());
+        // a queen between pairing and giving birth still holds her claim, which
+        // is saved as given back, with her drone saved in line
+        int pending = this.matingScheduler.getPendingClaims();
+        s.setLedger(this.ledger.getNectar() + pending, this.ledger.getPollen() + pending,
+                this.ledger.getNectarGathered(), this.ledger.getPollenGathered(), this.ledger.getDepositUpdates());
+        s.setRouterRandom(this.routerRandom.getState());
+        int[] occupancy = new int[this.flowerFields.length];
+        for (int i = 0; i < occupancy.length; i++) {
+            occupancy[i] = this.flowerFields[i].getOccupancy();
+        }
+        s.setFieldOccupancy(occupancy);
+        if (this.lifecycle.getLiveBees() == null) {
+            // the executor keeps the bees
+            this.executor.snapshot(s);
+            return s;
+        }
+        List<FlowerField> fields = Arrays.asList(this.flowerFields);
+        for (Bee bee : this.lifecycle.getLiveBees()) {
+            if (bee instanceof Drone && ((Drone) bee).hasMated()) {
+                s.addMatedDrone();
+                continue;
             }
+            int field = -1;
+            Resource resource = Resource.NONE;
+            if (bee instanceof Worker) {
+                field = fields.indexOf(((Worker) bee).getFlowerField());
+                resource = ((Worker) bee).getResource();
+            } else if (bee instanceof Queen) {
+                s.addQueen(bee.getId(), ((Queen) bee).getRandom().getState());
+            }
+            s.addBee(bee.getId(), bee.getRole(), resource, field);
+        }
+        for (int i = 0; i < this.matingScheduler.getChamberCount(); i++) {
+            // a chamber's index is the index of the first queen that mates in it
+            s.addChamber(this.matingScheduler.getChamber(i).getWaitingDrones().stream()
+                    .mapToInt(Bee::getId).toArray());
         }
-        System.out.println("*BH* Bee hive stops buzzing!");
+        return s;
+    }
+
+    /**
+     * Get the snapshot taken when the simulation ended.
+     *
+     * @return the snapshot, or null if none was asked for
+     */
+    public HiveSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+
+    /**
+     * How long did the bee hive take to shut down?
+     *
+     * @return the time in milliseconds
+     */
+    public long getShutdownMs() {
+        return TimeUnit.NANOSECONDS.toMillis(this.shutdownNanos);
+    }
+
+    /**
+     * Get the bees that were still running when the bee hive gave up
+     * waiting for them at the end of the simulation.
+     *
+     * @return the labels of the bees, empty if every bee finished
+     */
+    public List<String> getStillRunning() {
+        return this.stillRunning;
     }
 
     /**
      * When a bee perishes (a drone mates with the queen), the bee hive takes
      * note of this unfortunate, but necessary event for the circle of life.
+     * The bee leaves the live set and may be reused for a later birth, so
+     * the caller must be done with it.
+     *
+     * @param bee the bee that perished, or null if it only existed as a row
+     *            of a {@link BeePopulation}
      */
-    public synchronized void beePerished() {
-        numPerished++;
+    public void beePerished(Bee bee) {
+        numPerished.incrementAndGet();
+        lifecycle.perished(bee);
     }
 
     /**
@@ -235,9 +820,12 @@ public class BeeHive {
      *
      * @param bee the new bee
      */
-    public synchronized void addBee(Bee bee) {
-        numBorn++;
-        bees.add(bee);
+    public void addBee(Bee bee) {
+        numBorn.incrementAndGet();
+        lifecycle.born(bee);
+        if (this.active) {
+            this.executor.start(bee);
+        }
     }
 
     /**
@@ -246,25 +834,38 @@ public class BeeHive {
      *
      * @return do we have enough resources?
      */
-    public synchronized boolean hasResources() {
-        return nectar >= 1 && pollen >= 1;
+    public boolean hasResources() {
+        return ledger.hasResources();
+    }
+
+    /**
+     * Claim 1 unit of each resource if, and only if, the bee hive has them.
+     * Unlike calling {@link #hasResources()} and then {@link #claimResources()},
+     * no other bee can take the resources in between.
+     *
+     * @return whether the resources were claimed
+     */
+    public boolean tryClaimResources() {
+        return ledger.tryClaim();
     }
 
     /**
      * When the queen is ready to mate with a drone, they will claim 1 unit of each
-     * resource.
+     * resource.  The stock may go negative, so the queens use
+     * {@link #tryClaimResources()} instead.
      *
      * @rit.pre {@link BeeHive#hasResources()} is true
      */
-    public synchronized void claimResources() {
-        nectar--;
-        pollen--;
+    public void claimResources() {
+        ledger.claim();
     }
 
     /**
      * Add a new resource to the bee hive.  The worker bees when returning from
-     * the flower field will deposit their 1 unit of either nectar or pollen
-     * for storage.  At the start display the message:<br>
+     * the flower field will deposit their load of either nectar or pollen
+     * (1 unit unless configured otherwise, see {@link #getLoad(Resource)})
+     * for storage, with a single update of the stock.  Nothing is deposited
+     * once the simulation has ended.  At the start display the message:<br>
      * <br>
      * <tt>*BH* {bee} deposits</tt><br>
      * <br>
@@ -272,14 +873,56 @@ public class BeeHive {
      * @param resource the resource
      * @param bee      the worker bee who deposited the resource
      */
-    public synchronized void deposit(Resource resource, Worker bee) {
-        System.out.println("*BH* " + bee + " deposits");
-        if (resource.equals(Resource.NECTAR)) {
-            nectarGathered++;
-            nectar++;
-        } else if (resource.equals(Resource.POLLEN)) {
-            pollenGathered++;
-            pollen++;
+    public void deposit(Resource resource, Worker bee) {
+        // counted before the switch is checked, so a shutdown either sees the
+        // deposit in flight and waits for it or the deposit sees the switch
+        this.depositsInFlight.incrementAndGet();
+        long start = this.depositContention == null ? 0 : System.nanoTime();
+        try {
+            if (this.active) {
+                EventLog.log(EventType.DEPOSIT, bee);
+                store(resource);
+            }
+        } finally {
+            this.depositsInFlight.decrementAndGet();
+        }
+        if (this.depositContention != null) {
+            // the ledger never makes a depositor wait, so all of it is held
+            this.depositContention.acquired(0);
+            this.depositContention.released(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Store a worker's load of a resource without displaying a message, for
+     * workers that only exist as a row of a {@link BeePopulation}.
+     *
+     * @param resource the resource
+     */
+    void store(Resource resource) {
+        ledger.deposit(resource, getLoad(resource));
+        if (ledger.hasResources()) {
+            matingScheduler.signalAll();
         }
     }
+
+    /**
+     * A queen uses this to wait, without spinning, until the bee hive has
+     * at least 1 unit of both nectar and pollen and a drone is waiting in her
+     * chamber, or the simulation is over.
+     *
+     * @param queen the queen's index, see {@link MatingScheduler#enlist()}
+     */
+    public void awaitMatingConditions(int queen) {
+        matingScheduler.awaitPairing(queen);
+    }
+
+    /**
+     * Get the signal the first queen waits on, for its statistics.
+     *
+     * @return the queen's signal
+     */
+    public WakeSignal getQueenSignal() {
+        return this.matingScheduler.getSignal(0);
+    }
 }
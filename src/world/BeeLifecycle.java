@@ -0,0 +1,119 @@
+package world;
+
+import bee.Bee;
+import bee.Drone;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of the bees that are alive in a hive.  A bee joins the live
+ * set when it is born and leaves it when it perishes, so the hive only
+ * holds on to the bees that can still do something and the heap stays flat
+ * no matter how long the simulation runs.  When the executor keeps the bees
+ * itself (see {@link BeePopulation}) only the number alive is tracked.<br>
+ * <br>
+ * Perished drones are kept in a small bounded pool, and the next drone
+ * the queen gives birth to reuses one of them with a fresh id instead of
+ * allocating a new bee.  A drone is only pooled once nothing in the hive
+ * refers to it any more: it has left the chamber, and the event log only
+ * keeps the labels of the bees it has yet to write, not the bees.
+ *
+ * @author Isaias Villalobos
+ */
+class BeeLifecycle {
+    /** the bees that have been born and not perished, or null when not kept */
+    private final Set<Bee> live;
+    /** the number of bees that have been born and not perished */
+    private final LongAdder numLive;
+    /** perished drones waiting to be born again, or null when not pooling */
+    private final BlockingQueue<Drone> drones;
+    /** the number of births that reused a perished drone */
+    private final LongAdder recycled;
+
+    /**
+     * Create the lifecycle manager.
+     *
+     * @param poolSize the most perished drones kept for reuse, 0 for none
+     * @param keepBees whether the live bees are kept, or only counted
+     */
+    BeeLifecycle(int poolSize, boolean keepBees) {
+        this.live = keepBees ? ConcurrentHashMap.newKeySet() : null;
+        this.numLive = new LongAdder();
+        this.drones = poolSize > 0 && keepBees ? new ArrayBlockingQueue<>(poolSize) : null;
+        this.recycled = new LongAdder();
+    }
+
+    /**
+     * A bee was born.
+     *
+     * @param bee the new bee
+     */
+    void born(Bee bee) {
+        this.numLive.increment();
+        if (this.live != null) {
+            this.live.add(bee);
+        }
+    }
+
+    /**
+     * A bee perished.  It leaves the live set and, if it is a drone and the
+     * pool has room, waits there to be born again.  The bee must not be
+     * used by its caller afterwards.
+     *
+     * @param bee the bee that perished, or null if it is not kept
+     */
+    void perished(Bee bee) {
+        this.numLive.decrement();
+        if (this.live != null && bee != null) {
+            this.live.remove(bee);
+            if (this.drones != null && bee instanceof Drone) {
+                this.drones.offer((Drone) bee);
+            }
+        }
+    }
+
+    /**
+     * Take a perished drone to be born again.
+     *
+     * @return the drone, or null if there is none to reuse
+     */
+    Drone reuseDrone() {
+        Drone drone = this.drones == null ? null : this.drones.poll();
+        if (drone != null) {
+            this.recycled.increment();
+        }
+        return drone;
+    }
+
+    /**
+     * Get the bees that are alive.
+     *
+     * @return the live bees, or null if they are only counted
+     */
+    Collection<Bee> getLiveBees() {
+        return this.live;
+    }
+
+    /**
+     * How many bees are alive?
+     *
+     * @return the live bees
+     */
+    int getLive() {
+        return this.numLive.intValue();
+    }
+
+    /**
+     * How many births reused a perished drone?
+     *
+     * @return the recycled births
+     */
+    long getRecycled() {
+        return this.recycled.sum();
+    }
+}
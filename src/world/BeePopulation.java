@@ -0,0 +1,287 @@
+package world;
+
+import bee.Bee.Role;
+import bee.Worker.Resource;
+import log.TraceSubject;
+
+import java.util.Arrays;
+
+/**
+ * The bees of a hive stored as columns of primitive arrays instead of one
+ * object per bee, so that millions of bees fit in a few arrays and stepping
+ * them walks memory in order.  A bee is a row; the columns hold its id,
+ * role, resource, state, flower field and the simulation time it next has
+ * something to do.  The rows of perished bees are reused by later births.<br>
+ * <br>
+ * Rows are only added and removed by one thread at a time.  The columns
+ * may be read and the state and wake time of distinct rows written by
+ * several threads in between, see {@link BulkBeeExecutor}.
+ *
+ * @author Isaias Villalobos
+ */
+class BeePopulation {
+    /** the row is not in use */
+    static final byte FREE = 0;
+    /** a worker waiting for a flower */
+    static final byte WAITING = 1;
+    /** a worker gathering from a flower */
+    static final byte GATHERING = 2;
+    /** a drone waiting in the queen's chamber */
+    static final byte IN_CHAMBER = 3;
+    /** a drone that mated and is about to perish */
+    static final byte MATED = 4;
+    /** the queen waiting for her mating conditions */
+    static final byte IDLE = 5;
+    /** the queen taking her break before summoning a drone */
+    static final byte RESTING = 6;
+    /** the queen mating */
+    static final byte MATING = 7;
+
+    /** the roles, indexed by ordinal */
+    private static final Role[] ROLES = Role.values();
+    /** the resources, indexed by ordinal */
+    private static final Resource[] RESOURCES = Resource.values();
+    /** the number of rows a new population has room for */
+    private static final int INITIAL_ROWS = 1024;
+
+    /** each bee's id */
+    private int[] id;
+    /** each bee's role ordinal */
+    private byte[] role;
+    /** each bee's resource ordinal */
+    private byte[] resource;
+    /** each bee's state */
+    private byte[] state;
+    /** the index of the flower field each worker is in or waiting for */
+    private short[] field;
+    /** the simulation time each bee next has something to do */
+    private long[] nextWake;
+    /** the number of rows ever used */
+    private int rows;
+    /** the rows freed by perished bees */
+    private int[] free;
+    /** the number of freed rows */
+    private int numFree;
+
+    /**
+     * Create an empty population.
+     */
+    BeePopulation() {
+        this.id = new int[INITIAL_ROWS];
+        this.role = new byte[INITIAL_ROWS];
+        this.resource = new byte[INITIAL_ROWS];
+        this.state = new byte[INITIAL_ROWS];
+        this.field = new short[INITIAL_ROWS];
+        this.nextWake = new long[INITIAL_ROWS];
+        this.free = new int[INITIAL_ROWS];
+    }
+
+    /**
+     * Add a bee, reusing the row of a perished bee if there is one.
+     *
+     * @param beeId the bee's id
+     * @param beeRole the bee's role
+     * @param beeResource the bee's resource
+     * @param beeState the bee's first state
+     * @return the bee's row
+     */
+    int add(int beeId, Role beeRole, Resource beeResource, byte beeState) {
+        int row;
+        if (this.numFree > 0) {
+            row = this.free[--this.numFree];
+        } else {
+            if (this.rows == this.id.length) {
+                int length = this.rows * 2;
+                this.id = Arrays.copyOf(this.id, length);
+                this.role = Arrays.copyOf(this.role, length);
+                this.resource = Arrays.copyOf(this.resource, length);
+                this.state = Arrays.copyOf(this.state, length);
+                this.field = Arrays.copyOf(this.field, length);
+                this.nextWake = Arrays.copyOf(this.nextWake, length);
+            }
+            row = this.rows++;
+        }
+        this.id[row] = beeId;
+        this.role[row] = (byte) beeRole.ordinal();
+        this.resource[row] = (byte) beeResource.ordinal();
+        this.state[row] = beeState;
+        this.field[row] = 0;
+        this.nextWake[row] = 0;
+        return row;
+    }
+
+    /**
+     * Remove a perished bee.  Its row is reused by a later birth.
+     *
+     * @param row the bee's row
+     */
+    void remove(int row) {
+        this.state[row] = FREE;
+        if (this.numFree == this.free.length) {
+            this.free = Arrays.copyOf(this.free, this.numFree * 2);
+        }
+        this.free[this.numFree++] = row;
+    }
+
+    /**
+     * How many rows have been used?  Rows at or past this are never in use.
+     *
+     * @return the rows
+     */
+    int rows() {
+        return this.rows;
+    }
+
+    /**
+     * How many bees are there?
+     *
+     * @return the bees
+     */
+    int size() {
+        return this.rows - this.numFree;
+    }
+
+    /**
+     * Get a bee's id.
+     *
+     * @param row the bee's row
+     * @return the id
+     */
+    int id(int row) {
+        return this.id[row];
+    }
+
+    /**
+     * Get a bee's role.
+     *
+     * @param row the bee's row
+     * @return the role
+     */
+    Role role(int row) {
+        return ROLES[this.role[row]];
+    }
+
+    /**
+     * Get a bee's resource.
+     *
+     * @param row the bee's row
+     * @return the resource
+     */
+    Resource resource(int row) {
+        return RESOURCES[this.resource[row]];
+    }
+
+    /**
+     * Get a bee's state.
+     *
+     * @param row the bee's row
+     * @return the state
+     */
+    byte state(int row) {
+        return this.state[row];
+    }
+
+    /**
+     * Get the flower field a worker is in or waiting for.
+     *
+     * @param row the bee's row
+     * @return the index of the field
+     */
+    int field(int row) {
+        return this.field[row];
+    }
+
+    /**
+     * Send a worker to a flower field.
+     *
+     * @param row the bee's row
+     * @param index the index of the field
+     */
+    void setField(int row, int index) {
+        this.field[row] = (short) index;
+    }
+
+    /**
+     * Get the time a bee next has something to do.
+     *
+     * @param row the bee's row
+     * @return the simulation time in milliseconds
+     */
+    long nextWake(int row) {
+        return this.nextWake[row];
+    }
+
+    /**
+     * Move a bee to a new state.
+     *
+     * @param row the bee's row
+     * @param beeState the new state
+     * @param wakeTime the simulation time it next has something to do
+     */
+    void set(int row, byte beeState, long wakeTime) {
+        this.state[row] = beeState;
+        this.nextWake[row] = wakeTime;
+    }
+
+    /**
+     * Take a copy of a bee for the event log, which can record it like a bee
+     * object.  Callers should only do this for events that are logged.
+     *
+     * @param row the bee's row
+     * @return the copy
+     */
+    TraceSubject subject(int row) {
+        return new Subject(this.id[row], this.role[row], this.resource[row]);
+    }
+
+    /**
+     * A copy of a bee's row, as the event log sees it.
+     */
+    private static class Subject implements TraceSubject {
+        /** the bee's id */
+        private final int id;
+        /** the bee's role ordinal */
+        private final int role;
+        /** the bee's resource ordinal */
+        private final int resource;
+
+        /**
+         * Create the copy.
+         *
+         * @param id the bee's id
+         * @param role the bee's role ordinal
+         * @param resource the bee's resource ordinal
+         */
+        Subject(int id, int role, int resource) {
+            this.id = id;
+            this.role = role;
+            this.resource = resource;
+        }
+
+        @Override
+        public int getId() {
+            return this.id;
+        }
+
+        @Override
+        public int getRoleCode() {
+            return this.role;
+        }
+
+        @Override
+        public int getResourceCode() {
+            return this.resource;
+        }
+
+        /**
+         * The same string a bee object would have, see {@link bee.Bee#toString()}.
+         *
+         * @return the string
+         */
+        @Override
+        public String toString() {
+            String label = ROLES[this.role] + " #" + this.id;
+            return ROLES[this.role] == Role.WORKER ? RESOURCES[this.resource] + " " + label : label;
+        }
+    }
+}
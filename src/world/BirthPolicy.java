@@ -0,0 +1,62 @@
+package world;
+
+import bee.Worker.Resource;
+import util.RandomBee;
+
+/**
+ * Decides how many bees a queen gives birth to after mating and what each
+ * of them is.  The resources for the first bee are claimed when the queen
+ * is paired with her drone and each further bee claims its own, so a
+ * litter ends early if the stock runs out whatever the policy asked for.
+ * The supported policies are:<br>
+ * <br>
+ * <ul>
+ * <li><tt>fixed</tt> - between 1 and 4 bees, each a pollen worker 20% of
+ * the time, a nectar worker 20% and a drone 60% (the default, and the
+ * original odds)</li>
+ * <li><tt>resource-aware</tt> - the litter and the mix of roles follow the
+ * stock, how busy the flower fields are and how many drones are already
+ * waiting, see {@link ResourceAwareBirthPolicy}</li>
+ * </ul>
+ *
+ * @author Isaias Villalobos
+ */
+public interface BirthPolicy {
+    /**
+     * How many bees should the queen try to give birth to?
+     *
+     * @param beeHive the bee hive
+     * @param queen the queen's index, see {@link MatingScheduler#enlist()}
+     * @param random the queen's random numbers
+     * @return the number of bees, at least 1
+     */
+    int litterSize(BeeHive beeHive, int queen, RandomBee.Stream random);
+
+    /**
+     * What is the next bee born?
+     *
+     * @param beeHive the bee hive
+     * @param queen the queen's index, see {@link MatingScheduler#enlist()}
+     * @param random the queen's random numbers
+     * @return the resource of the worker born, or {@link Resource#NONE} for a drone
+     */
+    Resource nextBee(BeeHive beeHive, int queen, RandomBee.Stream random);
+
+    /**
+     * Create the policy given on the command line.
+     *
+     * @param name the policy
+     * @return the policy
+     * @throws IllegalArgumentException if the policy is not known
+     */
+    static BirthPolicy forName(String name) {
+        switch (name) {
+            case "fixed":
+                return new FixedBirthPolicy();
+            case "resource-aware":
+                return new ResourceAwareBirthPolicy();
+            default:
+                throw new IllegalArgumentException("Unknown birth policy: " + name);
+        }
+    }
+}
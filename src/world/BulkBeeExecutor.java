@@ -0,0 +1,469 @@
+package world;
+
+import bee.Bee;
+import bee.Bee.Role;
+import bee.Drone;
+import bee.Queen;
+import bee.Worker;
+import bee.Worker.Resource;
+import log.EventLog;
+import log.EventType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Steps the bees in bulk on a virtual clock.  The bees are kept as rows of
+ * a {@link BeePopulation} instead of objects, and the clock moves in ticks
+ * of the greatest common divisor of the bees' sleep times.  Every tick:<br>
+ * <br>
+ * <ol>
+ * <li>The rows are split into contiguous chunks that a small pool scans in
+ * parallel.  Workers whose gathering is over leave the field, deposit and
+ * head back out; drones whose time is up are collected to perish.</li>
+ * <li>One thread then, in row order, puts the returning workers in line for
+ * the field the hive's router picks, removes the perished drones, steps the queens and hands the free
+ * flowers to the workers at the front of the line.</li>
+ * </ol>
+ * <br>
+ * This replays {@link Worker#run()}, {@link Drone#run()} and
+ * {@link Queen#run()} with the same sleep times, each queen's chamber first
+ * come first served, the drones dealt out to the chambers and the queens
+ * paired with them like the {@link MatingScheduler}, and the hive's resource
+ * accounting, like the discrete event executor.  Waiting workers are served first come, first served
+ * whatever the field policy is.  A seeded run gives the same statistics for
+ * any number of threads, although the order of the logged deposits and field
+ * exits within a tick may vary when more than one thread is used.
+ *
+ * @author Isaias Villalobos
+ */
+class BulkBeeExecutor implements BeeExecutor {
+    /** the length of a tick, every sleep time is a whole number of ticks */
+    static final long TICK_MS = gcd(gcd(Worker.WORKER_SLEEP_TIME_MS, Drone.SLEEP_TIME_MS),
+            gcd(Queen.SLEEP_TIME_MS, Queen.MATE_TIME_MS));
+    /** populations smaller than this are scanned by one thread */
+    private static final int MIN_PARALLEL_ROWS = 1 << 14;
+
+    /** the bee hive */
+    private final BeeHive beeHive;
+    /** the bees */
+    private final BeePopulation population;
+    /** the scanners, or null for a single thread */
+    private final ForkJoinPool pool;
+    /** the parts of the population that are scanned in parallel */
+    private final List<Chunk> chunks;
+    /** the fields of flowers */
+    private final List<FlowerField> fields;
+    /** the workers waiting for a flower in each field, first come, first served */
+    private final IntQueue[] fieldLines;
+    /** deals the drones out to the chambers and numbers the queens */
+    private final MatingScheduler scheduler;
+    /** the drones waiting in each chamber, first come, first served */
+    private final IntQueue[] chamberLines;
+    /** the queens, by index, once they have been started */
+    private final Queen[] queens;
+    /** each queen's row, or -1 before she has been started */
+    private final int[] queenRows;
+    /** the row of the drone each resting queen was paired with */
+    private final int[] queenDrones;
+    /** the time of the next tick */
+    private long now;
+    /** the simulation time reached so far */
+    private long until;
+
+    /**
+     * Create the executor for the bee hive.
+     *
+     * @param beeHive the bee hive
+     * @param threads the number of threads that scan the population
+     */
+    BulkBeeExecutor(BeeHive beeHive, int threads) {
+        this.beeHive = beeHive;
+        this.population = new BeePopulation();
+        this.pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        this.chunks = new ArrayList<>();
+        for (int i = 0, n = threads > 1 ? threads * 4 : 1; i < n; i++) {
+            this.chunks.add(new Chunk());
+        }
+        this.fields = beeHive.getFlowerFields();
+        this.fieldLines = new IntQueue[this.fields.size()];
+        for (int i = 0; i < this.fieldLines.length; i++) {
+            this.fieldLines[i] = new IntQueue();
+        }
+        this.scheduler = beeHive.getMatingScheduler();
+        this.chamberLines = new IntQueue[this.scheduler.getChamberCount()];
+        for (int i = 0; i < this.chamberLines.length; i++) {
+            this.chamberLines[i] = new IntQueue();
+        }
+        this.queens = new Queen[this.scheduler.getQueenCount()];
+        this.queenRows = new int[this.queens.length];
+        Arrays.fill(this.queenRows, -1);
+        this.queenDrones = new int[this.queens.length];
+    }
+
+    @Override
+    public void start(Bee bee) {
+        if (bee.getRole() == Role.QUEEN) {
+            Queen queen = (Queen) bee;
+            this.queens[queen.getIndex()] = queen;
+            this.queenRows[queen.getIndex()] = this.population.add(bee.getId(), Role.QUEEN, Resource.NONE,
+                    BeePopulation.IDLE);
+        } else if (this.beeHive.isActive()) {
+            if (bee.getRole() == Role.WORKER) {
+                int row = this.population.add(bee.getId(), Role.WORKER,
+                        ((Worker) bee).getResource(), BeePopulation.WAITING);
+                log(EventType.FIELD_ENTER, row);
+                FlowerField restored = ((Worker) bee).getFlowerField();
+                if (restored != null) {
+                    // back in the field it was gathering in when the snapshot was taken
+                    int index = this.fields.indexOf(restored);
+                    this.population.setField(row, index);
+                    this.fieldLines[index].add(row);
+                } else {
+                    joinLine(row);
+                }
+            } else {
+                int row = this.population.add(bee.getId(), Role.DRONE, Resource.NONE, BeePopulation.IN_CHAMBER);
+                log(EventType.CHAMBER_ENTER, row);
+                this.chamberLines[this.scheduler.chooseChamberIndex()].add(row);
+            }
+        }
+    }
+
+    @Override
+    public void runFor(long timeMs, SimulationClock clock) {
+        this.until += timeMs;
+        while (this.now <= this.until && this.beeHive.isActive()) {
+            tick(this.now);
+            this.now += TICK_MS;
+        }
+    }
+
+    @Override
+    public void awaitTermination() {
+        // nothing is running in the background, what is left never happens
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
+        for (IntQueue line : this.fieldLines) {
+            line.clear();
+        }
+        for (IntQueue line : this.chamberLines) {
+            line.clear();
+        }
+        // the queens settle up like cancelled queen threads do: a pairing not
+        // acted on yet is undone and a mating under way ends in a birth
+        for (int queen = 0; queen < this.queens.length; queen++) {
+            int row = this.queenRows[queen];
+            if (row < 0) {
+                continue;
+            }
+            if (this.population.state(row) == BeePopulation.RESTING) {
+                this.scheduler.cancelClaim();
+            } else if (this.population.state(row) == BeePopulation.MATING) {
+                this.queens[queen].giveBirth();
+            }
+            this.population.set(row, BeePopulation.IDLE, 0);
+        }
+    }
+
+    @Override
+    public int getWaitingWorkers(FlowerField field, int index) {
+        return this.fieldLines[index].size();
+    }
+
+    @Override
+    public int getWaitingDrones(MatingScheduler scheduler, int queen) {
+        return this.chamberLines[scheduler.chamberIndexOf(queen)].size();
+    }
+
+    @Override
+    public void snapshot(HiveSnapshot snapshot) {
+        BeePopulation bees = this.population;
+        for (int row = 0; row < bees.rows(); row++) {
+            byte state = bees.state(row);
+            if (state == BeePopulation.MATED) {
+                snapshot.addMatedDrone();
+            } else if (state != BeePopulation.FREE) {
+                snapshot.addBee(bees.id(row), bees.role(row), bees.resource(row),
+                        state == BeePopulation.GATHERING ? bees.field(row) : -1);
+            }
+        }
+        for (Queen queen : this.queens) {
+            if (queen != null) {
+                snapshot.addQueen(queen.getId(), queen.getRandom().getState());
+            }
+        }
+        for (IntQueue line : this.chamberLines) {
+            int[] ids = new int[line.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = bees.id(line.get(i));
+            }
+            snapshot.addChamber(ids);
+        }
+    }
+
+    /**
+     * Step every bee that has something to do at a time.
+     *
+     * @param time the simulation time
+     */
+    private void tick(long time) {
+        int rows = this.population.rows();
+        int used = rows < MIN_PARALLEL_ROWS ? 1 : this.chunks.size();
+        int size = (rows + used - 1) / used;
+        for (int i = 0; i < used; i++) {
+            this.chunks.get(i).prepare(time, Math.min(rows, i * size), Math.min(rows, (i + 1) * size));
+        }
+        if (used == 1) {
+            this.chunks.get(0).call();
+        } else {
+            this.pool.invokeAll(this.chunks);
+        }
+
+        for (int i = 0; i < used; i++) {
+            Chunk chunk = this.chunks.get(i);
+            for (int j = 0; j < chunk.returned.size(); j++) {
+                joinLine(chunk.returned.get(j));
+            }
+            for (int j = 0; j < chunk.perished.size(); j++) {
+                int row = chunk.perished.get(j);
+                log(EventType.PERISHED, row);
+                this.population.remove(row);
+                this.beeHive.beePerished(null);
+            }
+        }
+        for (int i = 0; i < this.queens.length; i++) {
+            stepQueen(i, time);
+        }
+        admitWorkers(time);
+    }
+
+    /**
+     * A queen summons the drone she was paired with after her break, gives
+     * birth after mating, and when idle is paired with the drone at the front
+     * of her chamber as soon as both of her conditions are met.
+     *
+     * @param queen the queen's index
+     * @param time the simulation time
+     */
+    private void stepQueen(int queen, long time) {
+        int row = this.queenRows[queen];
+        if (row < 0) {
+            return;
+        }
+        if (this.population.state(row) == BeePopulation.RESTING && this.population.nextWake(row) <= time) {
+            int drone = this.queenDrones[queen];
+            log(EventType.MATE, drone);
+            log(EventType.CHAMBER_EXIT, drone);
+            this.population.set(drone, BeePopulation.MATED, time + Drone.SLEEP_TIME_MS);
+            this.population.set(row, BeePopulation.MATING, time + Queen.MATE_TIME_MS);
+        }
+        if (this.population.state(row) == BeePopulation.MATING && this.population.nextWake(row) <= time) {
+            this.queens[queen].giveBirth();
+            this.population.set(row, BeePopulation.IDLE, 0);
+        }
+        IntQueue line = this.chamberLines[this.scheduler.chamberIndexOf(queen)];
+        if (this.population.state(row) == BeePopulation.IDLE && this.beeHive.isActive()
+                && !line.isEmpty() && this.scheduler.tryClaim()) {
+            this.queenDrones[queen] = line.poll();
+            this.population.set(row, BeePopulation.RESTING, time + Queen.SLEEP_TIME_MS);
+        }
+    }
+
+    /**
+     * Put a worker in line for the field the hive's router picks.
+     *
+     * @param row the worker's row
+     */
+    private void joinLine(int row) {
+        int index = this.fieldLines.length == 1 ? 0 : this.beeHive.getFieldRouter().route(this.fieldLines.length,
+                i -> this.fields.get(i).getOccupancy() + this.fieldLines[i].size());
+        this.population.setField(row, index);
+        this.fieldLines[index].add(row);
+    }
+
+    /**
+     * Hand the free flowers of each field to the workers at the front of its line.
+     *
+     * @param time the simulation time
+     */
+    private void admitWorkers(long time) {
+        for (int i = 0; i < this.fieldLines.length; i++) {
+            FlowerField field = this.fields.get(i);
+            IntQueue line = this.fieldLines[i];
+            while (!line.isEmpty() && field.tryTakeFlower(this.population.resource(line.peek()))) {
+                this.population.set(line.poll(), BeePopulation.GATHERING, time + Worker.WORKER_SLEEP_TIME_MS);
+            }
+        }
+    }
+
+    /**
+     * Log an event about a bee, only copying it out of the population if the
+     * event is logged.
+     *
+     * @param type the event type
+     * @param row the bee's row
+     */
+    private void log(EventType type, int row) {
+        if (EventLog.isEnabled(type)) {
+            EventLog.log(type, this.population.subject(row));
+        }
+    }
+
+    /**
+     * The greatest common divisor.
+     *
+     * @param a a non-negative number
+     * @param b a non-negative number
+     * @return the greatest common divisor
+     */
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * A contiguous part of the population and what scanning it turned up.
+     * Chunks only change the state of their own rows, return flowers and
+     * deposit resources, which all commute, so they can be scanned in parallel.
+     */
+    private class Chunk implements Callable<Void> {
+        /** the workers that are done gathering, in row order */
+        private final IntQueue returned = new IntQueue();
+        /** the drones that perish, in row order */
+        private final IntQueue perished = new IntQueue();
+        /** the simulation time */
+        private long time;
+        /** the first row */
+        private int from;
+        /** one past the last row */
+        private int to;
+
+        /**
+         * Get ready to scan some rows.
+         *
+         * @param time the simulation time
+         * @param from the first row
+         * @param to one past the last row
+         */
+        void prepare(long time, int from, int to) {
+            this.time = time;
+            this.from = from;
+            this.to = to;
+            this.returned.clear();
+            this.perished.clear();
+        }
+
+        @Override
+        public Void call() {
+            BeePopulation bees = population;
+            for (int row = this.from; row < this.to; row++) {
+                byte state = bees.state(row);
+                if (state == BeePopulation.GATHERING && bees.nextWake(row) <= this.time) {
+                    Resource resource = bees.resource(row);
+                    fields.get(bees.field(row)).returnFlower(resource);
+                    log(EventType.FIELD_EXIT, row);
+                    if (beeHive.isActive()) {
+                        log(EventType.DEPOSIT, row);
+                        beeHive.store(resource);
+                    }
+                    log(EventType.FIELD_ENTER, row);
+                    bees.set(row, BeePopulation.WAITING, 0);
+                    this.returned.add(row);
+                } else if (state == BeePopulation.MATED && bees.nextWake(row) <= this.time) {
+                    this.perished.add(row);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A growable first in, first out queue of ints.
+     */
+    private static class IntQueue {
+        /** the elements, wrapping around */
+        private int[] elements = new int[64];
+        /** the index of the first element */
+        private int head;
+        /** the number of elements */
+        private int size;
+
+        /**
+         * Add to the back.
+         *
+         * @param value the value
+         */
+        void add(int value) {
+            if (this.size == this.elements.length) {
+                int[] grown = new int[this.size * 2];
+                for (int i = 0; i < this.size; i++) {
+                    grown[i] = get(i);
+                }
+                this.elements = grown;
+                this.head = 0;
+            }
+            this.elements[(this.head + this.size++) % this.elements.length] = value;
+        }
+
+        /**
+         * Look at the front.
+         *
+         * @return the first value
+         */
+        int peek() {
+            return this.elements[this.head];
+        }
+
+        /**
+         * Take from the front.
+         *
+         * @return the first value
+         */
+        int poll() {
+            int value = this.elements[this.head];
+            this.head = (this.head + 1) % this.elements.length;
+            this.size--;
+            return value;
+        }
+
+        /**
+         * Get a value without removing it.
+         *
+         * @param index the position from the front
+         * @return the value
+         */
+        int get(int index) {
+            return this.elements[(this.head + index) % this.elements.length];
+        }
+
+        /**
+         * How many values are there?
+         *
+         * @return the size
+         */
+        int size() {
+            return this.size;
+        }
+
+        /**
+         * Is the queue empty?
+         *
+         * @return whether it is empty
+         */
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        /**
+         * Remove everything.
+         */
+        void clear() {
+            this.head = 0;
+            this.size = 0;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package world;
+
+import bee.Bee;
+import bee.Drone;
+import bee.Queen;
+import bee.Worker;
+import log.EventLog;
+import log.EventType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Steps the bees on a discrete event engine instead of giving them threads.
+ * The behavior of {@link Worker#run()}, {@link Drone#run()} and
+ * {@link Queen#run()} is replayed as events on a virtual clock with the same
+ * sleep times, while the flower field's capacity, the queen's chamber's
+ * first come first served mating, the pairing of queens and drones and the
+ * bee hive's resource accounting are reused as is.  A simulated hour finishes in well under a second of CPU.
+ *
+ * @author Isaias Villalobos
+ */
+class EventBeeExecutor implements BeeExecutor {
+    /** the bee hive */
+    private final BeeHive beeHive;
+    /** the events and the virtual clock */
+    private final EventEngine engine;
+    /** the fields of flowers */
+    private final List<FlowerField> fields;
+    /** the workers waiting for a free flower in each field */
+    private final List<Queue<Worker>> fieldWaiters;
+    /** pairs the queens with the drones */
+    private final MatingScheduler scheduler;
+    /** the queens, by index, once they have been started */
+    private final Queen[] queens;
+    /** is each queen between being paired with a drone and giving birth? */
+    private final boolean[] queenBusy;
+    /** the drone each queen is paired with and has not mated yet, or null */
+    private final QueensChamber.Slot[] queenDrones;
+
+    /**
+     * Create the executor for the bee hive.
+     *
+     * @param beeHive the bee hive
+     */
+    EventBeeExecutor(BeeHive beeHive) {
+        this.beeHive = beeHive;
+        this.engine = new EventEngine();
+        this.fields = beeHive.getFlowerFields();
+        this.fieldWaiters = new ArrayList<>();
+        for (int i = 0; i < this.fields.size(); i++) {
+            this.fieldWaiters.add(new ArrayDeque<>());
+        }
+        this.scheduler = beeHive.getMatingScheduler();
+        this.queens = new Queen[this.scheduler.getQueenCount()];
+        this.queenBusy = new boolean[this.queens.length];
+        this.queenDrones = new QueensChamber.Slot[this.queens.length];
+    }
+
+    @Override
+    public void start(Bee bee) {
+        switch (bee.getRole()) {
+            case WORKER:
+                workerArrives((Worker) bee);
+                break;
+            case DRONE:
+                droneArrives((Drone) bee);
+                break;
+            case QUEEN:
+                Queen queen = (Queen) bee;
+                this.queens[queen.getIndex()] = queen;
+                queenTries();
+                break;
+        }
+    }
+
+    @Override
+    public void runFor(long timeMs, SimulationClock clock) {
+        this.engine.runUntil(this.engine.now() + timeMs);
+    }
+
+    @Override
+    public void awaitTermination() {
+        // nothing is running in the background, what is left never happens
+        this.engine.clear();
+        this.fieldWaiters.forEach(Queue::clear);
+        // but the queens settle up like cancelled queen threads do: a pairing
+        // not acted on yet is undone and a mating under way ends in a birth
+        for (int i = 0; i < this.queens.length; i++) {
+            if (this.queenBusy[i]) {
+                if (this.queenDrones[i] != null) {
+                    this.scheduler.cancelPairing(i, this.queenDrones[i]);
+                    this.queenDrones[i] = null;
+                } else {
+                    this.queens[i].giveBirth();
+                }
+                this.queenBusy[i] = false;
+            }
+        }
+    }
+
+    @Override
+    public int getWaitingWorkers(FlowerField field, int index) {
+        return this.fieldWaiters.get(index).size();
+    }
+
+    /**
+     * The worker arrives at the field the hive's router picks, or after a
+     * restore the field it was gathering in.  It either
+     * takes a free flower and gathers for the worker sleep time, or waits for
+     * a flower to free up.
+     *
+     * @param worker the worker
+     */
+    private void workerArrives(Worker worker) {
+        if (!this.beeHive.isActive()) {
+            return;
+        }
+        FlowerField restored = worker.getFlowerField();
+        int index = restored != null ? this.fields.indexOf(restored)
+                : this.fields.size() == 1 ? 0 : this.beeHive.getFieldRouter().route(this.fields.size(),
+                i -> this.fields.get(i).getOccupancy() + this.fieldWaiters.get(i).size());
+        EventLog.log(EventType.FIELD_ENTER, worker);
+        if (this.fields.get(index).tryEnterField(worker)) {
+            this.engine.schedule(Worker.WORKER_SLEEP_TIME_MS, () -> workerGathered(worker, index));
+        } else {
+            this.fieldWaiters.get(index).add(worker);
+        }
+    }
+
+    /**
+     * The worker is done gathering.  It leaves the field, handing its flower
+     * to the next worker waiting there, deposits its resource and heads back out.
+     *
+     * @param worker the worker
+     * @param index the index of the field
+     */
+    private void workerGathered(Worker worker, int index) {
+        FlowerField field = this.fields.get(index);
+        Queue<Worker> waiters = this.fieldWaiters.get(index);
+        field.exitField(worker);
+        Worker next = waiters.peek();
+        if (next != null && field.tryEnterField(next)) {
+            waiters.remove();
+            this.engine.schedule(Worker.WORKER_SLEEP_TIME_MS, () -> workerGathered(next, index));
+        }
+        if (this.beeHive.isActive()) {
+            this.beeHive.deposit(worker.getResource(), worker);
+            queenTries();
+        }
+        workerArrives(worker);
+    }
+
+    /**
+     * The drone enters the queen's chamber and waits to be summoned.
+     *
+     * @param drone the drone
+     */
+    private void droneArrives(Drone drone) {
+        if (!this.beeHive.isActive()) {
+            return;
+        }
+        this.beeHive.chooseChamber(drone).queueDrone(drone);
+        queenTries();
+    }
+
+    /**
+     * Each queen that is idle and whose conditions are both met is paired
+     * with the next drone in her chamber, takes her break and then summons it.
+     */
+    private void queenTries() {
+        for (int i = 0; i < this.queens.length && this.beeHive.isActive(); i++) {
+            if (this.queens[i] != null && !this.queenBusy[i]) {
+                QueensChamber.Slot drone = this.scheduler.tryPair(i);
+                if (drone != null) {
+                    int queen = i;
+                    this.queenBusy[i] = true;
+                    this.queenDrones[i] = drone;
+                    this.engine.schedule(Queen.SLEEP_TIME_MS, () -> queenMates(queen, drone));
+                }
+            }
+        }
+    }
+
+    /**
+     * A queen mates with the drone she was paired with.  The drone perishes
+     * after its sleep time and the queen gives birth after the mating time.
+     *
+     * @param queen the queen's index
+     * @param slot the drone's place in her chamber
+     */
+    private void queenMates(int queen, QueensChamber.Slot slot) {
+        this.queenDrones[queen] = null;
+        Drone drone = this.scheduler.getChamber(queen).mateDrone(slot);
+        this.engine.schedule(Drone.SLEEP_TIME_MS, () -> {
+            EventLog.log(EventType.PERISHED, drone);
+            this.beeHive.beePerished(drone);
+        });
+        this.engine.schedule(Queen.MATE_TIME_MS, () -> {
+            this.queens[queen].giveBirth();
+            this.queenBusy[queen] = false;
+            queenTries();
+        });
+    }
+}
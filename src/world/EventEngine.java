@@ -0,0 +1,104 @@
+package world;
+
+import java.util.PriorityQueue;
+
+/**
+ * A discrete event engine.  Actions are scheduled at a time on a virtual
+ * clock and run one at a time in time order by a single thread, so no time
+ * is spent sleeping.  Actions scheduled for the same time run in the order
+ * they were scheduled.
+ *
+ * @author Isaias Villalobos
+ */
+class EventEngine {
+    /**
+     * An action waiting to run at a time on the virtual clock.
+     */
+    private static class Event implements Comparable<Event> {
+        /** when the action runs */
+        private final long time;
+        /** breaks ties between events at the same time */
+        private final long sequence;
+        /** the action */
+        private final Runnable action;
+
+        /**
+         * Create the event.
+         *
+         * @param time when the action runs
+         * @param sequence breaks ties between events at the same time
+         * @param action the action
+         */
+        private Event(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int result = Long.compare(this.time, other.time);
+            if (result == 0) {
+                result = Long.compare(this.sequence, other.sequence);
+            }
+            return result;
+        }
+    }
+
+    /** the pending events, soonest first */
+    private final PriorityQueue<Event> events;
+    /** the current time on the virtual clock, in milliseconds */
+    private long now;
+    /** the number of events scheduled so far */
+    private long sequence;
+
+    /**
+     * Create the engine with the virtual clock at 0 and no pending events.
+     */
+    EventEngine() {
+        this.events = new PriorityQueue<>();
+        this.now = 0;
+        this.sequence = 0;
+    }
+
+    /**
+     * What time is it on the virtual clock?
+     *
+     * @return the time in milliseconds
+     */
+    long now() {
+        return this.now;
+    }
+
+    /**
+     * Schedule an action to run after a delay.
+     *
+     * @param delayMs the delay in milliseconds from now
+     * @param action the action
+     */
+    void schedule(long delayMs, Runnable action) {
+        this.events.add(new Event(this.now + delayMs, this.sequence++, action));
+    }
+
+    /**
+     * Run all the events up to and including the end time, then leave the
+     * virtual clock at the end time.  Any later events stay pending.
+     *
+     * @param endTime the time to stop at, in milliseconds
+     */
+    void runUntil(long endTime) {
+        while (!this.events.isEmpty() && this.events.peek().time <= endTime) {
+            Event event = this.events.poll();
+            this.now = event.time;
+            event.action.run();
+        }
+        this.now = endTime;
+    }
+
+    /**
+     * Drop all the pending events.
+     */
+    void clear() {
+        this.events.clear();
+    }
+}
@@ -0,0 +1,79 @@
+package world;
+
+import bee.Worker.Resource;
+
+import java.util.Locale;
+
+/**
+ * Decides which waiting worker gets the next free flower in the field.  The
+ * supported policies are:<br>
+ * <br>
+ * <ul>
+ * <li><tt>unfair</tt> - a worker arriving just as a flower frees up may
+ * barge ahead of the ones already waiting (the default, and the original
+ * behavior)</li>
+ * <li><tt>fair</tt> - first come, first served</li>
+ * <li><tt>priority:RESOURCE</tt> - workers gathering the named resource go
+ * ahead of all the others, first come, first served within each resource</li>
+ * </ul>
+ *
+ * @author Isaias Villalobos
+ */
+public interface FieldAdmission {
+    /**
+     * Take a flower, waiting until one is free.
+     *
+     * @param resource the resource the worker gathers
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void acquire(Resource resource) throws InterruptedException;
+
+    /**
+     * Take a flower only if one is free right now.
+     *
+     * @param resource the resource the worker gathers
+     * @return whether the worker got a flower
+     */
+    boolean tryAcquire(Resource resource);
+
+    /**
+     * Give a flower back.
+     *
+     * @param resource the resource the worker leaving the field gathered
+     */
+    void release(Resource resource);
+
+    /**
+     * How many flowers are free?
+     *
+     * @return the number of free flowers
+     */
+    int available();
+
+    /**
+     * Roughly how many workers are waiting for a flower?
+     *
+     * @return the number of waiting workers
+     */
+    int waiting();
+
+    /**
+     * Create the admission for a policy given on the command line.
+     *
+     * @param policy the policy
+     * @param capacity the number of flowers
+     * @return the admission
+     * @throws IllegalArgumentException if the policy is not known
+     */
+    static FieldAdmission forPolicy(String policy, int capacity) {
+        if (policy.equals("unfair")) {
+            return new SemaphoreAdmission(capacity, false);
+        } else if (policy.equals("fair")) {
+            return new SemaphoreAdmission(capacity, true);
+        } else if (policy.startsWith("priority:")) {
+            String resource = policy.substring("priority:".length()).toUpperCase(Locale.ROOT);
+            return new PriorityAdmission(capacity, Resource.valueOf(resource));
+        }
+        throw new IllegalArgumentException("Unknown field policy: " + policy);
+    }
+}
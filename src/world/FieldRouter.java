@@ -0,0 +1,53 @@
+package world;
+
+import util.RandomBee;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Decides which of the hive's flower fields a worker heads to on its next
+ * trip.  The supported strategies are:<br>
+ * <br>
+ * <ul>
+ * <li><tt>round-robin</tt> - each trip goes to the next field in turn (the
+ * default)</li>
+ * <li><tt>least-loaded</tt> - the field with the fewest workers gathering
+ * or waiting</li>
+ * <li><tt>two-choice</tt> - the less loaded of two fields picked at random,
+ * which balances almost as well as least-loaded without looking at every
+ * field</li>
+ * </ul>
+ *
+ * @author Isaias Villalobos
+ */
+public interface FieldRouter {
+    /**
+     * Pick a field.
+     *
+     * @param fields the number of fields
+     * @param load the number of workers gathering in or waiting for each field
+     * @return the index of the field
+     */
+    int route(int fields, IntUnaryOperator load);
+
+    /**
+     * Create the router for a strategy given on the command line.
+     *
+     * @param strategy the strategy
+     * @param random the random numbers for strategies that need them
+     * @return the router
+     * @throws IllegalArgumentException if the strategy is not known
+     */
+    static FieldRouter forStrategy(String strategy, RandomBee.Stream random) {
+        switch (strategy) {
+            case "round-robin":
+                return new RoundRobinRouter();
+            case "least-loaded":
+                return new LeastLoadedRouter();
+            case "two-choice":
+                return new TwoChoiceRouter(random);
+            default:
+                throw new IllegalArgumentException("Unknown field route: " + strategy);
+        }
+    }
+}
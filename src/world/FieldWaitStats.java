@@ -0,0 +1,99 @@
+package world;
+
+import bee.Worker;
+import bee.Worker.Resource;
+import util.Histogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long the workers waited for a free flower, per worker and per
+ * resource.  The spread between workers shows how fair an admission policy
+ * is, and the overall numbers show what it costs in throughput.
+ *
+ * @author Isaias Villalobos
+ */
+public class FieldWaitStats {
+    /** the wait times of each worker */
+    private final Map<Worker, Histogram> perWorker;
+    /** the wait times of all the workers gathering each resource */
+    private final Map<Resource, Histogram> perResource;
+
+    /**
+     * Create the statistics with nothing recorded.
+     */
+    public FieldWaitStats() {
+        this.perWorker = new ConcurrentHashMap<>();
+        this.perResource = new EnumMap<>(Resource.class);
+        for (Resource resource : Resource.values()) {
+            this.perResource.put(resource, new Histogram());
+        }
+    }
+
+    /**
+     * Record how long a worker waited to enter the field.
+     *
+     * @param worker the worker
+     * @param nanos the wait in nanoseconds
+     */
+    public void record(Worker worker, long nanos) {
+        this.perWorker.computeIfAbsent(worker, w -> new Histogram()).record(nanos);
+        this.perResource.get(worker.getResource()).record(nanos);
+    }
+
+    /**
+     * Print the wait times per resource, and a fairness summary across the
+     * workers: Jain's index of the number of entries and of the mean wait
+     * (1.0 means every worker was treated the same).
+     *
+     * @param out where to print
+     * @param perWorkerLines whether to also print one line per worker
+     */
+    public void print(PrintStream out, boolean perWorkerLines) {
+        out.println("Field wait (all): " + total());
+        for (Resource resource : new Resource[]{Resource.NECTAR, Resource.POLLEN}) {
+            out.println("Field wait (" + resource + "): " + this.perResource.get(resource));
+        }
+        double entries = 0, entriesSquared = 0, means = 0, meansSquared = 0;
+        for (Histogram histogram : this.perWorker.values()) {
+            entries += histogram.getCount();
+            entriesSquared += (double) histogram.getCount() * histogram.getCount();
+            means += histogram.getMeanNanos();
+            meansSquared += histogram.getMeanNanos() * histogram.getMeanNanos();
+        }
+        int n = this.perWorker.size();
+        out.printf("Field fairness over %d workers: entries=%.3f wait=%.3f%n",
+                n, jain(entries, entriesSquared, n), jain(means, meansSquared, n));
+        if (perWorkerLines) {
+            this.perWorker.entrySet().stream()
+                    .sorted((a, b) -> Integer.compare(a.getKey().hashCode(), b.getKey().hashCode()))
+                    .forEach(e -> out.println("Field wait (" + e.getKey() + "): " + e.getValue()));
+        }
+    }
+
+    /**
+     * The wait times of all the workers.
+     *
+     * @return the combined histogram
+     */
+    public Histogram total() {
+        Histogram total = new Histogram();
+        this.perResource.values().forEach(total::add);
+        return total;
+    }
+
+    /**
+     * Jain's fairness index, (sum x)^2 / (n * sum x^2).
+     *
+     * @param sum the sum of the values
+     * @param sumSquares the sum of the squares of the values
+     * @param n the number of values
+     * @return the index, 1.0 when there is nothing to compare
+     */
+    private static double jain(double sum, double sumSquares, int n) {
+        return n == 0 || sumSquares == 0 ? 1.0 : sum * sum / (n * sumSquares);
+    }
+}
@@ -0,0 +1,30 @@
+package world;
+
+import bee.Queen;
+import bee.Worker.Resource;
+import util.RandomBee;
+
+/**
+ * The original odds: between {@link Queen#MIN_NEW_BEES} and
+ * {@link Queen#MAX_NEW_BEES} bees, each a pollen worker 20% of the time, a
+ * nectar worker 20% and a drone 60%, whatever is going on in the hive.
+ *
+ * @author Isaias Villalobos
+ */
+class FixedBirthPolicy implements BirthPolicy {
+    @Override
+    public int litterSize(BeeHive beeHive, int queen, RandomBee.Stream random) {
+        return random.nextInt(Queen.MIN_NEW_BEES, Queen.MAX_NEW_BEES);
+    }
+
+    @Override
+    public Resource nextBee(BeeHive beeHive, int queen, RandomBee.Stream random) {
+        int roleChance = random.nextInt(1, 10);
+        if (roleChance < 3) {
+            return Resource.POLLEN;
+        } else if (roleChance < 5) {
+            return Resource.NECTAR;
+        }
+        return Resource.NONE;
+    }
+}
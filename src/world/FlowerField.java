@@ -1,28 +1,148 @@
 package world;
 
 import bee.Worker;
+import bee.Worker.Resource;
+import log.EventLog;
+import log.EventType;
+import metrics.ContentionProfiler;
+
+import java.util.concurrent.atomic.LongAdder;
+
 
 /**
  * The field of flowers that are ripe for the worker bees to gather the nectar
  * and pollen resources.  The bees can arrive in any order and they are
  * immediately allowed to start gathering, as long as there is a free flower.
- * Otherwise the bee must wait until a flower becomes free.
+ * Otherwise the bee must wait until a flower becomes free.  Which waiting
+ * bee gets the next free flower is up to the field's {@link FieldAdmission}
+ * policy.  The field uses no monitor, so waiting bees never pin the carrier
+ * thread when bees run on virtual threads.
  *
  * @author Sean Strout @ RIT CS
  * @author Isaias Villalobos
  */
 public class FlowerField {
-    /** the maximum number of workers allowed in the field at the same time */
+    /** the default maximum number of workers allowed in the field at the same time */
     public final static int MAX_WORKERS = 10;
 
-    /** the current number of workers in the field */
-    private int numWorkers;
+    /** the maximum number of workers allowed in the field at the same time */
+    private final int maxWorkers;
+    /** hands out the flowers */
+    private final FieldAdmission admission;
+    /** the wait times, or null if they are not being recorded */
+    private final FieldWaitStats waitStats;
+    /** the total time workers spent waiting for a flower, or null if it is not being recorded */
+    private final LongAdder blockedNanos;
+    /** the number of times a worker got a flower */
+    private final LongAdder trips;
+    /** where the waits for and holds of the flowers are profiled, or null */
+    private final ContentionProfiler.SyncPoint contention;
 
     /**
      * Create the flower field.  Initially there are no worker bees in the field.
      */
     public FlowerField() {
-        this.numWorkers = 0;
+        this(MAX_WORKERS, FieldAdmission.forPolicy("unfair", MAX_WORKERS), null, null);
+    }
+
+    /**
+     * Create the flower field with a capacity and admission policy.
+     *
+     * @param maxWorkers the maximum number of workers allowed in the field at the same time
+     * @param admission hands out the flowers, it must have maxWorkers of them
+     * @param waitStats where to record the wait times, or null not to record them
+     * @param blockedNanos where to add up the time spent waiting, or null not to
+     */
+    public FlowerField(int maxWorkers, FieldAdmission admission, FieldWaitStats waitStats,
+                       LongAdder blockedNanos) {
+        this(maxWorkers, admission, waitStats, blockedNanos, null);
+    }
+
+    /**
+     * Create the flower field with a capacity and admission policy, and
+     * profile how long the workers wait for and hold on to the flowers.
+     *
+     * @param maxWorkers the maximum number of workers allowed in the field at the same time
+     * @param admission hands out the flowers, it must have maxWorkers of them
+     * @param waitStats where to record the wait times, or null not to record them
+     * @param blockedNanos where to add up the time spent waiting, or null not to
+     * @param contention where to profile the flowers, or null not to
+     */
+    public FlowerField(int maxWorkers, FieldAdmission admission, FieldWaitStats waitStats,
+                       LongAdder blockedNanos, ContentionProfiler.SyncPoint contention) {
+        this.contention = contention;
+        this.maxWorkers = maxWorkers;
+        this.admission = admission;
+        this.waitStats = waitStats;
+        this.blockedNanos = blockedNanos;
+        this.trips = new LongAdder();
+    }
+
+    /**
+     * How many workers can be in the field at the same time?
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return this.maxWorkers;
+    }
+
+    /**
+     * How many workers are in the field right now?
+     *
+     * @return the occupancy
+     */
+    public int getOccupancy() {
+        return this.maxWorkers - this.admission.available();
+    }
+
+    /**
+     * Roughly how many workers are waiting for a free flower?
+     *
+     * @return the number of waiting workers
+     */
+    public int getWaiting() {
+        return this.admission.waiting();
+    }
+
+    /**
+     * How many workers are gathering in or waiting for the field, as seen by
+     * a {@link FieldRouter}?
+     *
+     * @return the load
+     */
+    public int getLoad() {
+        return getOccupancy() + getWaiting();
+    }
+
+    /**
+     * How many times did a worker get a flower?
+     *
+     * @return the number of trips
+     */
+    public long getTrips() {
+        return this.trips.sum();
+    }
+
+    /**
+     * What share of the field's flower time was used?  Every trip takes a
+     * flower for {@link Worker#WORKER_SLEEP_TIME_MS}.
+     *
+     * @param elapsedMs how long the field has been open
+     * @return the utilization between 0 and 1
+     */
+    public double getUtilization(long elapsedMs) {
+        double available = (double) this.maxWorkers * elapsedMs;
+        return available <= 0 ? 0 : Math.min(1.0, getTrips() * (double) Worker.WORKER_SLEEP_TIME_MS / available);
+    }
+
+    /**
+     * Get the wait time statistics.
+     *
+     * @return the statistics, or null if they are not being recorded
+     */
+    public FieldWaitStats getWaitStats() {
+        return this.waitStats;
     }
 
     /**
@@ -33,20 +153,81 @@ public class FlowerField {
      * There is only one condition that would cause a bee to have to wait - if there
      * are no flowers because all the other bees are gathering from them.  In this
      * case they have to wait until a bee exits the field to see if they can go next.
-     * There is no control over the order the bees will follow.
+     * The order the bees follow is up to the admission policy.  Being
+     * interrupted while waiting is how the bee hive cancels the worker when
+     * it shuts down, so the worker gives up without a flower and keeps its
+     * interrupt status.
      *
      * @param worker the worker bee entering the field
+     * @return whether the worker got a flower, false if it was cancelled
      */
-    public synchronized void enterField(Worker worker) {
-        System.out.println("*FF* " + worker + " enters field");
-        while(numWorkers == MAX_WORKERS){
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    public boolean enterField(Worker worker) {
+        EventLog.log(EventType.FIELD_ENTER, worker);
+        boolean timed = this.waitStats != null || this.blockedNanos != null || this.contention != null;
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            this.admission.acquire(worker.getResource());
+            this.trips.increment();
+            worker.setFlowerField(this);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if (timed) {
+            long waited = System.nanoTime() - start;
+            if (this.waitStats != null) {
+                this.waitStats.record(worker, waited);
+            }
+            if (this.blockedNanos != null) {
+                this.blockedNanos.add(waited);
+            }
+            if (this.contention != null) {
+                this.contention.acquired(waited);
+                worker.setFlowerTakenNanos(start + waited);
             }
         }
-        numWorkers++;
+        return true;
+    }
+
+    /**
+     * Take a free flower for the worker without waiting.  No message is
+     * displayed, this is meant for callers that keep their own collection
+     * of waiting bees, like the discrete event engine.
+     *
+     * @param worker the worker bee entering the field
+     * @return whether the worker got a flower
+     */
+    public boolean tryEnterField(Worker worker) {
+        if (tryTakeFlower(worker.getResource())) {
+            worker.setFlowerField(this);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take a free flower without waiting, for a worker that only exists as a
+     * row of a {@link BeePopulation}.  No message is displayed.
+     *
+     * @param resource the resource the worker gathers
+     * @return whether the worker got a flower
+     */
+    boolean tryTakeFlower(Resource resource) {
+        if (this.admission.tryAcquire(resource)) {
+            this.trips.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give back the flower taken with {@link #tryTakeFlower(Resource)}.  No
+     * message is displayed.
+     *
+     * @param resource the resource the worker gathered
+     */
+    void returnFlower(Resource resource) {
+        this.admission.release(resource);
     }
 
     /**
@@ -60,9 +241,12 @@ public class FlowerField {
      *
      * @param worker the worker bee leaving the field
      */
-    public synchronized void exitField(Worker worker) {
-        System.out.println("*FF* " + worker + " leaves field");
-        numWorkers--;
-        this.notify();
+    public void exitField(Worker worker) {
+        if (this.contention != null) {
+            this.contention.released(System.nanoTime() - worker.getFlowerTakenNanos());
+        }
+        worker.setFlowerField(null);
+        this.admission.release(worker.getResource());
+        EventLog.log(EventType.FIELD_EXIT, worker);
     }
 }
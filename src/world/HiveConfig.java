@@ -0,0 +1,515 @@
+package world;
+
+import log.EventLog.Level;
+import log.EventType.Subsystem;
+import metrics.ContentionProfiler;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The optional settings for a bee simulation.  They come from the
+ * <tt>--name=value</tt> options given to BeeMain ahead of the four
+ * required arguments, e.g.:<br>
+ * <br>
+ * <tt>$ java BeeMain --executor=virtual 10 2 100 100</tt><br>
+ * <br>
+ * Any option that is not given keeps the behavior of the original
+ * simulation.
+ *
+ * @author Isaias Villalobos
+ */
+public class HiveConfig {
+    /** how each bee's run() body is executed, see {@link BeeExecutor#forMode(HiveConfig, BeeHive)} */
+    private final String executorMode;
+    /** the lowest level of event that is logged */
+    private final Level logLevel;
+    /** the subsystems whose events are logged */
+    private final Set<Subsystem> logSubsystems;
+    /** the file the log goes to, or null for standard output */
+    private final String logFile;
+    /** whether the log is written as a binary trace instead of text */
+    private final boolean logBinary;
+    /** whether the log is written by a background thread */
+    private final boolean logAsync;
+    /** the number of events the log's ring buffer holds */
+    private final int logRingSize;
+    /** whether the queen polls for her mating conditions instead of parking */
+    private final boolean queenSpin;
+    /** whether to report how long the queen waited and how often she woke */
+    private final boolean queenStats;
+    /** the number of queens */
+    private final int queens;
+    /** whether each queen has a chamber of her own instead of sharing one */
+    private final boolean chambersSharded;
+    /** the maximum number of workers in each flower field at the same time */
+    private final int[] fieldCapacities;
+    /** which field a worker heads to, see {@link FieldRouter#forStrategy} */
+    private final String fieldRoute;
+    /** who gets the next free flower, see {@link FieldAdmission#forPolicy(String, int)} */
+    private final String fieldPolicy;
+    /** whether to record how long the workers wait for a flower: false, true or workers */
+    private final String fieldStats;
+    /** how the queens' litters are made up, see {@link BirthPolicy#forName(String)} */
+    private final String birthPolicy;
+    /** the random seed, or null for an unseeded run */
+    private final Long seed;
+    /** the file metrics snapshots are appended to, or null */
+    private final String metricsFile;
+    /** the local port the latest metrics snapshot is served on, or 0 */
+    private final int metricsPort;
+    /** the time between metrics snapshots */
+    private final long metricsIntervalMs;
+    /** the most perished drones kept to be born again */
+    private final int beePoolSize;
+    /** the units of nectar a worker carries back from one trip to the field */
+    private final int nectarLoad;
+    /** the units of pollen a worker carries back from one trip to the field */
+    private final int pollenLoad;
+    /** the number of threads that step the bees in bulk mode */
+    private final int bulkThreads;
+    /** the number of threads that drive the workers' trips in scheduled mode */
+    private final int schedulerThreads;
+    /** how long the bees may finish their current step before being cancelled */
+    private final long shutdownGraceMs;
+    /** how long the bee hive waits for its bees when it shuts down */
+    private final long shutdownDeadlineMs;
+    /** the time between samples of the threads' contention, or 0 not to profile contention */
+    private final long contentionSampleMs;
+    /** simulated time per wall-clock time */
+    private final double timeScale;
+    /** the file a snapshot of the hive is written to when the simulation ends, or null */
+    private final String snapshotFile;
+    /** the snapshot file the hive is restored from, or null */
+    private final String restoreFile;
+
+    /**
+     * Create the default configuration.
+     */
+    public HiveConfig() {
+        this(Collections.emptyMap());
+    }
+
+    /**
+     * Create the configuration from the parsed command line options.
+     *
+     * @param options option name (without the leading dashes) to value
+     * @throws IllegalArgumentException if a count or size option is out of range
+     */
+    public HiveConfig(Map<String, String> options) {
+        this.executorMode = options.getOrDefault("executor", BeeExecutor.PLATFORM);
+        this.logLevel = Level.valueOf(options.getOrDefault("log-level", "trace").toUpperCase(Locale.ROOT));
+        this.logSubsystems = EnumSet.noneOf(Subsystem.class);
+        for (String name : options.getOrDefault("log-only", "FF,QC,BH,Q,D").split(",")) {
+            this.logSubsystems.add(Subsystem.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+        }
+        this.logFile = options.get("log-file");
+        this.logBinary = "binary".equals(options.getOrDefault("log-format", "text"));
+        this.logAsync = !Boolean.parseBoolean(options.getOrDefault("log-sync", "false"));
+        this.logRingSize = Integer.parseInt(options.getOrDefault("log-ring-size", "65536"));
+        this.queenSpin = "spin".equals(options.getOrDefault("queen-wait", "park"));
+        this.queenStats = Boolean.parseBoolean(options.getOrDefault("queen-stats", "false"));
+        this.queens = atLeast("queens", options.getOrDefault("queens", "1"), 1);
+        this.chambersSharded = "sharded".equals(options.getOrDefault("chambers", "shared"));
+        String[] capacities = options.getOrDefault("field-capacity", String.valueOf(FlowerField.MAX_WORKERS))
+                .split(",");
+        int fields = Math.max(capacities.length, atLeast("fields", options.getOrDefault("fields", "1"), 1));
+        this.fieldCapacities = new int[fields];
+        for (int i = 0; i < fields; i++) {
+            // the last capacity given is used for the rest of the fields, and
+            // a field without a flower would keep its workers waiting forever
+            this.fieldCapacities[i] = atLeast("field-capacity", capacities[Math.min(i, capacities.length - 1)], 1);
+        }
+        this.fieldRoute = options.getOrDefault("field-route", "round-robin");
+        this.fieldPolicy = options.getOrDefault("field-policy", "unfair");
+        this.fieldStats = options.getOrDefault("field-stats", "false");
+        this.birthPolicy = options.getOrDefault("birth-policy", "fixed");
+        this.seed = options.containsKey("seed") ? Long.valueOf(options.get("seed")) : null;
+        this.metricsFile = options.get("metrics-file");
+        this.metricsPort = Integer.parseInt(options.getOrDefault("metrics-port", "0"));
+        this.metricsIntervalMs = Long.parseLong(options.getOrDefault("metrics-interval-ms", "1000"));
+        this.beePoolSize = atLeast("bee-pool", options.getOrDefault("bee-pool", "256"), 0);
+        // a worker carrying nothing, or less, would throw off the ledger
+        int load = atLeast("load", options.getOrDefault("load", "1"), 1);
+        this.nectarLoad = options.containsKey("load-nectar") ? atLeast("load-nectar", options.get("load-nectar"), 1)
+                : load;
+        this.pollenLoad = options.containsKey("load-pollen") ? atLeast("load-pollen", options.get("load-pollen"), 1)
+                : load;
+        this.bulkThreads = atLeast("bulk-threads", options.getOrDefault("bulk-threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())), 1);
+        this.schedulerThreads = atLeast("scheduler-threads", options.getOrDefault("scheduler-threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())), 1);
+        this.shutdownGraceMs = Long.parseLong(options.getOrDefault("shutdown-grace-ms", "0"));
+        this.shutdownDeadlineMs = Long.parseLong(options.getOrDefault("shutdown-deadline-ms", "10000"));
+        String contention = options.getOrDefault("contention", "false");
+        this.contentionSampleMs = "false".equals(contention) ? 0 : "true".equals(contention)
+                ? ContentionProfiler.DEFAULT_SAMPLE_MS : Long.parseLong(contention);
+        this.timeScale = Double.parseDouble(options.getOrDefault("time-scale",
+                String.valueOf(SimulationClock.REAL_TIME)));
+        this.snapshotFile = options.get("snapshot");
+        this.restoreFile = options.get("restore");
+    }
+
+    /**
+     * Parse the value of an option that has a lowest allowed value.
+     *
+     * @param option the option's name, without the leading dashes
+     * @param value the option's value
+     * @param least the lowest allowed value
+     * @return the value
+     * @throws IllegalArgumentException if the value is less than the lowest
+     */
+    private static int atLeast(String option, String value, int least) {
+        int parsed = Integer.parseInt(value.trim());
+        if (parsed < least) {
+            throw new IllegalArgumentException("--" + option + " must be at least " + least + ": " + parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * How are the bees executed?
+     *
+     * @return the executor mode
+     */
+    public String getExecutorMode() {
+        return this.executorMode;
+    }
+
+    /**
+     * What is the lowest level of event that is logged?
+     *
+     * @return the level
+     */
+    public Level getLogLevel() {
+        return this.logLevel;
+    }
+
+    /**
+     * Which subsystems have their events logged?
+     *
+     * @return the subsystems
+     */
+    public Set<Subsystem> getLogSubsystems() {
+        return this.logSubsystems;
+    }
+
+    /**
+     * Where does the log go?
+     *
+     * @return the file name, or null for standard output
+     */
+    public String getLogFile() {
+        return this.logFile;
+    }
+
+    /**
+     * Is the log written as a binary trace instead of text?
+     *
+     * @return whether the log is binary
+     */
+    public boolean isLogBinary() {
+        return this.logBinary;
+    }
+
+    /**
+     * Is the log written by a background thread?
+     *
+     * @return whether the log is asynchronous
+     */
+    public boolean isLogAsync() {
+        return this.logAsync;
+    }
+
+    /**
+     * How many events can the log's ring buffer hold before bees have to
+     * wait for the writer?
+     *
+     * @return the ring size
+     */
+    public int getLogRingSize() {
+        return this.logRingSize;
+    }
+
+    /**
+     * Does the queen poll for her mating conditions, like the original busy
+     * loop, instead of parking?
+     *
+     * @return whether the queen spins
+     */
+    public boolean isQueenSpin() {
+        return this.queenSpin;
+    }
+
+    /**
+     * Should the queen's waiting statistics be reported?
+     *
+     * @return whether to report them
+     */
+    public boolean isQueenStats() {
+        return this.queenStats;
+    }
+
+    /**
+     * How many queens does the hive have?
+     *
+     * @return the number of queens
+     */
+    public int getQueens() {
+        return this.queens;
+    }
+
+    /**
+     * Does each queen have a chamber of her own, instead of all of them
+     * sharing one?
+     *
+     * @return whether the chambers are sharded
+     */
+    public boolean isChambersSharded() {
+        return this.chambersSharded;
+    }
+
+    /**
+     * How many flower fields does the hive have?
+     *
+     * @return the number of fields
+     */
+    public int getFieldCount() {
+        return this.fieldCapacities.length;
+    }
+
+    /**
+     * How many workers can be in a flower field at the same time?
+     *
+     * @param field the index of the field
+     * @return the field capacity
+     */
+    public int getFieldCapacity(int field) {
+        return this.fieldCapacities[field];
+    }
+
+    /**
+     * How are the workers routed between the fields?
+     *
+     * @return the routing strategy
+     */
+    public String getFieldRoute() {
+        return this.fieldRoute;
+    }
+
+    /**
+     * Who gets the next free flower?
+     *
+     * @return the field admission policy
+     */
+    public String getFieldPolicy() {
+        return this.fieldPolicy;
+    }
+
+    /**
+     * How are the queens' litters made up?
+     *
+     * @return the birth policy
+     */
+    public String getBirthPolicy() {
+        return this.birthPolicy;
+    }
+
+    /**
+     * Are the workers' waits for a flower recorded?
+     *
+     * @return whether to record them
+     */
+    public boolean isFieldStats() {
+        return !"false".equals(this.fieldStats);
+    }
+
+    /**
+     * Are the waits reported for every worker, not just in total?
+     *
+     * @return whether to report each worker
+     */
+    public boolean isFieldStatsPerWorker() {
+        return "workers".equals(this.fieldStats);
+    }
+
+    /**
+     * What is the random seed?
+     *
+     * @return the seed, or null for an unseeded run
+     */
+    public Long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Are live metrics being reported?  If so, the time bees spend blocked is
+     * also measured.
+     *
+     * @return whether metrics are reported
+     */
+    public boolean isMetrics() {
+        return this.metricsFile != null || this.metricsPort > 0;
+    }
+
+    /**
+     * Where are the metrics snapshots appended?
+     *
+     * @return the file name, or null
+     */
+    public String getMetricsFile() {
+        return this.metricsFile;
+    }
+
+    /**
+     * Which local port is the latest metrics snapshot served on?
+     *
+     * @return the port, or 0 for none
+     */
+    public int getMetricsPort() {
+        return this.metricsPort;
+    }
+
+    /**
+     * How often is a metrics snapshot taken?
+     *
+     * @return the interval in milliseconds
+     */
+    public long getMetricsIntervalMs() {
+        return this.metricsIntervalMs;
+    }
+
+    /**
+     * How many perished drones are kept to be reused by later births?
+     *
+     * @return the pool size, 0 for none
+     */
+    public int getBeePoolSize() {
+        return this.beePoolSize;
+    }
+
+    /**
+     * How many threads step the bees in bulk mode?
+     *
+     * @return the number of threads
+     */
+    public int getBulkThreads() {
+        return this.bulkThreads;
+    }
+
+    /**
+     * How many threads drive the workers' trips in scheduled mode?
+     *
+     * @return the number of threads
+     */
+    public int getSchedulerThreads() {
+        return this.schedulerThreads;
+    }
+
+    /**
+     * How long may the bees finish what they are doing when the simulation
+     * ends before they are cancelled?
+     *
+     * @return the grace period in milliseconds
+     */
+    public long getShutdownGraceMs() {
+        return this.shutdownGraceMs;
+    }
+
+    /**
+     * How long does the bee hive wait for its bees, in total, when the
+     * simulation ends?  Bees still running after this are reported and left
+     * behind.
+     *
+     * @return the deadline in milliseconds
+     */
+    public long getShutdownDeadlineMs() {
+        return this.shutdownDeadlineMs;
+    }
+
+    /**
+     * Is the contention between the bees profiled?
+     *
+     * @return whether to profile contention
+     */
+    public boolean isContention() {
+        return this.contentionSampleMs > 0;
+    }
+
+    /**
+     * How often are the threads sampled when contention is profiled?
+     *
+     * @return the time between samples in milliseconds
+     */
+    public long getContentionSampleMs() {
+        return this.contentionSampleMs;
+    }
+
+    /**
+     * How much faster than real time do the bees run?  The durations are
+     * simulated, the clock scales them to the wall clock, see
+     * {@link SimulationClock}.
+     *
+     * @return simulated time per wall-clock time
+     */
+    public double getTimeScale() {
+        return this.timeScale;
+    }
+
+    /**
+     * Was a time scale other than real time asked for?
+     *
+     * @return whether the time is scaled
+     */
+    public boolean isTimeScaled() {
+        return this.timeScale != SimulationClock.REAL_TIME;
+    }
+
+    /**
+     * Where is a snapshot of the hive written when the simulation ends?
+     *
+     * @return the file, or null for no snapshot
+     */
+    public String getSnapshotFile() {
+        return this.snapshotFile;
+    }
+
+    /**
+     * Which snapshot is the hive restored from?
+     *
+     * @return the file, or null to start a new hive
+     */
+    public String getRestoreFile() {
+        return this.restoreFile;
+    }
+
+    /**
+     * How many units of nectar does a worker carry back from one trip?
+     *
+     * @return the nectar load
+     */
+    public int getNectarLoad() {
+        return this.nectarLoad;
+    }
+
+    /**
+     * How many units of pollen does a worker carry back from one trip?
+     *
+     * @return the pollen load
+     */
+    public int getPollenLoad() {
+        return this.pollenLoad;
+    }
+
+    /**
+     * Do workers carry more than one unit per trip?
+     *
+     * @return whether any load is more than one unit
+     */
+    public boolean isBatchedLoads() {
+        return this.nectarLoad != 1 || this.pollenLoad != 1;
+    }
+}
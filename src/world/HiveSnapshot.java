@@ -0,0 +1,471 @@
+package world;
+
+import bee.Bee.Role;
+import bee.Worker.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The state of a bee hive at the moment its simulation ended, so that
+ * another run can pick up where it left off, e.g. to fork several what-if
+ * runs from one warmed-up hive:<br>
+ * <br>
+ * <tt>$ java BeeMain --snapshot=warm.snap 600 10 50 50</tt><br>
+ * <tt>$ java BeeMain --restore=warm.snap --queens=2 60</tt><br>
+ * <br>
+ * A snapshot holds the resource ledger, the hive's counters, every live bee
+ * (id, role, resource and the field it was gathering in), the order of the
+ * drones waiting in each chamber, each field's occupancy, and the state of
+ * the queens' and the field router's random numbers.  Each bee takes eight
+ * bytes.  It is taken once the switch is flipped and the deposits in flight
+ * have landed, before any bee is dismissed or cancelled.  For the event and
+ * bulk executors nothing runs at that moment, so the snapshot is exact;
+ * with threads it is as of the switch, give or take the bees in mid-step.<br>
+ * <br>
+ * A restored bee starts its current step over: a worker that was gathering
+ * heads back to the same field ahead of the others, and the drones re-enter
+ * the chambers in the order they were waiting.  Drones that had already
+ * mated are recorded as perished.  The file is laid out as:<br>
+ * <br>
+ * <tt>"BEESNAPS" version elapsed-ms next-id born perished</tt><br>
+ * <tt>nectar pollen nectar-gathered pollen-gathered deposit-updates router-random</tt><br>
+ * <tt>#fields occupancy... #bees (id role resource field)... </tt><br>
+ * <tt>#queens (id random)... #chambers (#drones id...)...</tt>
+ *
+ * @author Isaias Villalobos
+ */
+public class HiveSnapshot {
+    /** the first bytes of every snapshot */
+    public static final String MAGIC = "BEESNAPS";
+    /** the version of the layout */
+    public static final int VERSION = 1;
+
+    /** the simulated time the hive had run for */
+    private long elapsedMs;
+    /** the id the next bee born gets */
+    private int nextBeeId;
+    /** the bees born */
+    private int numBorn;
+    /** the bees perished */
+    private int numPerished;
+    /** the nectar in stock */
+    private int nectar;
+    /** the pollen in stock */
+    private int pollen;
+    /** the nectar gathered */
+    private int nectarGathered;
+    /** the pollen gathered */
+    private int pollenGathered;
+    /** the deposits that updated the stock */
+    private long depositUpdates;
+    /** the state of the field router's random numbers */
+    private long routerRandom;
+    /** the workers gathering in each field */
+    private int[] fieldOccupancy;
+    /** the live bees, each packed as id, role, resource and field, see {@link #pack} */
+    private long[] bees;
+    /** the number of live bees */
+    private int numBees;
+    /** each queen's id and the state of her random numbers, in pairs */
+    private final List<long[]> queens;
+    /** the ids of the drones waiting in each chamber, in order */
+    private final List<int[]> chambers;
+
+    /**
+     * Create an empty snapshot to be filled in by the hive.
+     */
+    HiveSnapshot() {
+        this.fieldOccupancy = new int[0];
+        this.bees = new long[64];
+        this.queens = new ArrayList<>();
+        this.chambers = new ArrayList<>();
+    }
+
+    /**
+     * Pack a bee into a long whose order is the order of the ids.
+     *
+     * @param id the bee's id
+     * @param role the bee's role
+     * @param resource the bee's resource
+     * @param field the index of the field it was gathering in, or -1
+     * @return the packed bee
+     */
+    private static long pack(int id, Role role, Resource resource, int field) {
+        return ((long) id << 32) | (role.ordinal() << 24) | (resource.ordinal() << 16) | (field & 0xFFFF);
+    }
+
+    /**
+     * Record the hive's counters.
+     *
+     * @param elapsedMs the simulated time the hive had run for
+     * @param nextBeeId the id the next bee born gets
+     * @param numBorn the bees born
+     * @param numPerished the bees perished
+     */
+    void setCounters(long elapsedMs, int nextBeeId, int numBorn, int numPerished) {
+        this.elapsedMs = elapsedMs;
+        this.nextBeeId = nextBeeId;
+        this.numBorn = numBorn;
+        this.numPerished = numPerished;
+    }
+
+    /**
+     * Record the resource ledger.
+     *
+     * @param nectar the nectar in stock
+     * @param pollen the pollen in stock
+     * @param nectarGathered the nectar gathered
+     * @param pollenGathered the pollen gathered
+     * @param depositUpdates the deposits that updated the stock
+     */
+    void setLedger(int nectar, int pollen, int nectarGathered, int pollenGathered, long depositUpdates) {
+        this.nectar = nectar;
+        this.pollen = pollen;
+        this.nectarGathered = nectarGathered;
+        this.pollenGathered = pollenGathered;
+        this.depositUpdates = depositUpdates;
+    }
+
+    /**
+     * Record the state of the field router's random numbers.
+     *
+     * @param state the state
+     */
+    void setRouterRandom(long state) {
+        this.routerRandom = state;
+    }
+
+    /**
+     * Record how many workers were gathering in each field.
+     *
+     * @param occupancy the workers in each field
+     */
+    void setFieldOccupancy(int[] occupancy) {
+        this.fieldOccupancy = occupancy;
+    }
+
+    /**
+     * Record a live bee.
+     *
+     * @param id the bee's id
+     * @param role the bee's role
+     * @param resource the bee's resource
+     * @param field the index of the field a worker was gathering in, or -1
+     */
+    void addBee(int id, Role role, Resource resource, int field) {
+        if (this.numBees == this.bees.length) {
+            this.bees = Arrays.copyOf(this.bees, this.numBees * 2);
+        }
+        this.bees[this.numBees++] = pack(id, role, resource, field);
+    }
+
+    /**
+     * Record a drone that had mated, and so counts as perished.
+     */
+    void addMatedDrone() {
+        this.numPerished++;
+    }
+
+    /**
+     * Record a queen's random numbers.  The queen must also be added with
+     * {@link #addBee}.
+     *
+     * @param id the queen's id
+     * @param random the state of her random numbers
+     */
+    void addQueen(int id, long random) {
+        this.queens.add(new long[]{id, random});
+    }
+
+    /**
+     * Record the drones waiting in a chamber.
+     *
+     * @param droneIds the drones' ids, in the order they are waiting
+     */
+    void addChamber(int[] droneIds) {
+        this.chambers.add(droneIds);
+    }
+
+    /**
+     * Write the snapshot to a file.  The bees and queens are written in
+     * the order of their ids.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        Arrays.sort(this.bees, 0, this.numBees);
+        this.queens.sort((a, b) -> Long.compare(a[0], b[0]));
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.write(MAGIC.getBytes(StandardCharsets.US_ASCII));
+            out.writeInt(VERSION);
+            out.writeLong(this.elapsedMs);
+            out.writeInt(this.nextBeeId);
+            out.writeInt(this.numBorn);
+            out.writeInt(this.numPerished);
+            out.writeInt(this.nectar);
+            out.writeInt(this.pollen);
+            out.writeInt(this.nectarGathered);
+            out.writeInt(this.pollenGathered);
+            out.writeLong(this.depositUpdates);
+            out.writeLong(this.routerRandom);
+            out.writeInt(this.fieldOccupancy.length);
+            for (int occupancy : this.fieldOccupancy) {
+                out.writeInt(occupancy);
+            }
+            out.writeInt(this.numBees);
+            for (int i = 0; i < this.numBees; i++) {
+                out.writeLong(this.bees[i]);
+            }
+            out.writeInt(this.queens.size());
+            for (long[] queen : this.queens) {
+                out.writeInt((int) queen[0]);
+                out.writeLong(queen[1]);
+            }
+            out.writeInt(this.chambers.size());
+            for (int[] chamber : this.chambers) {
+                out.writeInt(chamber.length);
+                for (int id : chamber) {
+                    out.writeInt(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read a snapshot from a file.
+     *
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static HiveSnapshot read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] magic = new byte[MAGIC.length()];
+            in.readFully(magic);
+            if (!MAGIC.equals(new String(magic, StandardCharsets.US_ASCII))) {
+                throw new IOException(file + " is not a hive snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported snapshot version " + version);
+            }
+            HiveSnapshot snapshot = new HiveSnapshot();
+            snapshot.setCounters(in.readLong(), in.readInt(), in.readInt(), in.readInt());
+            snapshot.setLedger(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readLong());
+            snapshot.setRouterRandom(in.readLong());
+            int[] occupancy = new int[in.readInt()];
+            for (int i = 0; i < occupancy.length; i++) {
+                occupancy[i] = in.readInt();
+            }
+            snapshot.setFieldOccupancy(occupancy);
+            int numBees = in.readInt();
+            snapshot.bees = new long[Math.max(numBees, 1)];
+            for (int i = 0; i < numBees; i++) {
+                snapshot.bees[i] = in.readLong();
+            }
+            snapshot.numBees = numBees;
+            for (int i = in.readInt(); i > 0; i--) {
+                snapshot.addQueen(in.readInt(), in.readLong());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                int[] ids = new int[in.readInt()];
+                for (int j = 0; j < ids.length; j++) {
+                    ids[j] = in.readInt();
+                }
+                snapshot.addChamber(ids);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Find a bee by its id in a snapshot that was written or read.
+     *
+     * @param id the bee's id
+     * @return the bee's index, or a negative number if it is not live
+     */
+    int indexOf(int id) {
+        long key = (long) id << 32;
+        int i = Arrays.binarySearch(this.bees, 0, this.numBees, key);
+        // the low bits are never all zero for a bee, so the search lands just before it
+        i = i < 0 ? -i - 1 : i;
+        return i < this.numBees && getId(i) == id ? i : -1;
+    }
+
+    /**
+     * How long had the hive run for?
+     *
+     * @return the simulated time in milliseconds
+     */
+    public long getElapsedMs() {
+        return this.elapsedMs;
+    }
+
+    /**
+     * What id does the next bee born get?
+     *
+     * @return the id
+     */
+    int getNextBeeId() {
+        return this.nextBeeId;
+    }
+
+    /**
+     * How many bees were born?
+     *
+     * @return the bees born
+     */
+    public int getNumBorn() {
+        return this.numBorn;
+    }
+
+    /**
+     * How many bees perished?
+     *
+     * @return the bees perished
+     */
+    public int getNumPerished() {
+        return this.numPerished;
+    }
+
+    /**
+     * How much nectar was in stock?
+     *
+     * @return the nectar
+     */
+    int getNectar() {
+        return this.nectar;
+    }
+
+    /**
+     * How much pollen was in stock?
+     *
+     * @return the pollen
+     */
+    int getPollen() {
+        return this.pollen;
+    }
+
+    /**
+     * How much nectar was gathered?
+     *
+     * @return the nectar gathered
+     */
+    int getNectarGathered() {
+        return this.nectarGathered;
+    }
+
+    /**
+     * How much pollen was gathered?
+     *
+     * @return the pollen gathered
+     */
+    int getPollenGathered() {
+        return this.pollenGathered;
+    }
+
+    /**
+     * How many deposits updated the stock?
+     *
+     * @return the deposit updates
+     */
+    long getDepositUpdates() {
+        return this.depositUpdates;
+    }
+
+    /**
+     * Get the state of the field router's random numbers.
+     *
+     * @return the state
+     */
+    long getRouterRandom() {
+        return this.routerRandom;
+    }
+
+    /**
+     * How many workers were gathering in each field?
+     *
+     * @return the occupancy of each field
+     */
+    public int[] getFieldOccupancy() {
+        return this.fieldOccupancy.clone();
+    }
+
+    /**
+     * How many bees were alive?
+     *
+     * @return the live bees
+     */
+    public int getNumBees() {
+        return this.numBees;
+    }
+
+    /**
+     * Get a live bee's id.
+     *
+     * @param index the bee's index, in the order of the ids
+     * @return the id
+     */
+    int getId(int index) {
+        return (int) (this.bees[index] >>> 32);
+    }
+
+    /**
+     * Get a live bee's role.
+     *
+     * @param index the bee's index
+     * @return the role
+     */
+    Role getRole(int index) {
+        return Role.values()[(int) (this.bees[index] >>> 24) & 0xFF];
+    }
+
+    /**
+     * Get a live bee's resource.
+     *
+     * @param index the bee's index
+     * @return the resource
+     */
+    Resource getResource(int index) {
+        return Resource.values()[(int) (this.bees[index] >>> 16) & 0xFF];
+    }
+
+    /**
+     * Get the field a live worker was gathering in.
+     *
+     * @param index the bee's index
+     * @return the index of the field, or -1
+     */
+    int getField(int index) {
+        return (short) this.bees[index];
+    }
+
+    /**
+     * Get the queens' ids and the states of their random numbers.
+     *
+     * @return pairs of id and state, in the order of the ids
+     */
+    List<long[]> getQueens() {
+        return this.queens;
+    }
+
+    /**
+     * Get the drones waiting in each chamber.
+     *
+     * @return the drones' ids for each chamber, in order
+     */
+    List<int[]> getChambers() {
+        return this.chambers;
+    }
+}
@@ -0,0 +1,25 @@
+package world;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sends each trip to the field with the fewest workers gathering or
+ * waiting, the first such field on a tie.  This looks at every field.
+ *
+ * @author Isaias Villalobos
+ */
+class LeastLoadedRouter implements FieldRouter {
+    @Override
+    public int route(int fields, IntUnaryOperator load) {
+        int best = 0;
+        int bestLoad = load.applyAsInt(0);
+        for (int i = 1; i < fields && bestLoad > 0; i++) {
+            int current = load.applyAsInt(i);
+            if (current < bestLoad) {
+                best = i;
+                bestLoad = current;
+            }
+        }
+        return best;
+    }
+}
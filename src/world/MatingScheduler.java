@@ -0,0 +1,341 @@
+package world;
+
+import bee.Drone;
+import metrics.ContentionProfiler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Pairs the drones waiting in the queens' chambers with the queens that are
+ * free to mate.  A hive may have several queens, who either share one
+ * chamber or each have a chamber of their own (sharded), in which case
+ * arriving drones are dealt out to the chambers in turn.<br>
+ * <br>
+ * Nothing here takes a lock.  A free queen claims one unit of each resource
+ * from the ledger in one atomic step and then takes the drone at the front
+ * of her chamber for herself.  If another queen took the last drone in
+ * between, the resources go back and the queen waits again, so two queens
+ * never mate with the same drone and every birth is paid for exactly once.
+ * Sharing a chamber keeps every queen busy as long as any drone waits;
+ * sharding keeps the queens from contending on one line, at the cost of a
+ * queen idling while another queen's chamber has drones.
+ *
+ * @author Isaias Villalobos
+ */
+public class MatingScheduler {
+    /** the chambers the queens share, or one for each queen */
+    private final QueensChamber[] chambers;
+    /** each queen waits on her own signal until she is able to mate */
+    private final WakeSignal[] signals;
+    /** the nectar and pollen the births are paid for with */
+    private final ResourceLedger ledger;
+    /** whether the simulation is still going */
+    private final BooleanSupplier active;
+    /** hands out the queens' indexes */
+    private final AtomicInteger nextQueen;
+    /** deals arriving drones out to the chambers */
+    private final AtomicInteger nextChamber;
+    /** the number of times each queen mated */
+    private final AtomicLongArray matings;
+    /** the number of bees each queen gave birth to */
+    private final AtomicLongArray births;
+    /** the claims that were given back because another queen took the drone */
+    private final LongAdder missedPairings;
+    /** the claims made for a pairing whose births have not been recorded yet */
+    private final AtomicInteger pendingClaims;
+
+    /**
+     * Create the scheduler and the chambers.
+     *
+     * @param queens the number of queens
+     * @param sharded whether each queen has a chamber of her own
+     * @param spin whether the queens poll for their mating conditions instead of parking
+     * @param ledger the nectar and pollen the births are paid for with
+     * @param active whether the simulation is still going
+     * @param blockedNanos where to add up the time drones spend waiting, or null not to
+     * @param contention where to profile the drones' waits, or null not to
+     */
+    MatingScheduler(int queens, boolean sharded, boolean spin, ResourceLedger ledger,
+                    BooleanSupplier active, LongAdder blockedNanos, ContentionProfiler contention) {
+        this.ledger = ledger;
+        this.active = active;
+        this.signals = new WakeSignal[queens];
+        for (int i = 0; i < queens; i++) {
+            this.signals[i] = new WakeSignal(spin);
+        }
+        this.chambers = new QueensChamber[sharded ? queens : 1];
+        for (int i = 0; i < this.chambers.length; i++) {
+            // a drone in a shared chamber may be taken by any of the queens
+            WakeSignal only = this.signals[i];
+            this.chambers[i] = new QueensChamber(sharded ? only::signal : this::signalAll, blockedNanos,
+                    contention == null ? null : contention.point(sharded ? "chamber[" + i + "]" : "chamber"));
+        }
+        this.nextQueen = new AtomicInteger();
+        this.nextChamber = new AtomicInteger();
+        this.matings = new AtomicLongArray(queens);
+        this.births = new AtomicLongArray(queens);
+        this.missedPairings = new LongAdder();
+        this.pendingClaims = new AtomicInteger();
+    }
+
+    /**
+     * Give a new queen her index.  Queens are numbered from 0 in the order
+     * they are created.
+     *
+     * @return the queen's index
+     * @throws IllegalStateException if the hive already has all of its queens
+     */
+    public int enlist() {
+        int queen = this.nextQueen.getAndIncrement();
+        if (queen >= this.signals.length) {
+            throw new IllegalStateException("the hive only has room for " + this.signals.length + " queens");
+        }
+        return queen;
+    }
+
+    /**
+     * How many queens does the hive have?
+     *
+     * @return the number of queens
+     */
+    public int getQueenCount() {
+        return this.signals.length;
+    }
+
+    /**
+     * How many chambers are there?
+     *
+     * @return 1 if the queens share a chamber, otherwise the number of queens
+     */
+    public int getChamberCount() {
+        return this.chambers.length;
+    }
+
+    /**
+     * Get the index of the chamber a queen mates in.
+     *
+     * @param queen the queen's index
+     * @return the index of her chamber
+     */
+    public int chamberIndexOf(int queen) {
+        return this.chambers.length == 1 ? 0 : queen;
+    }
+
+    /**
+     * Get the chamber a queen mates in.
+     *
+     * @param queen the queen's index
+     * @return her chamber
+     */
+    public QueensChamber getChamber(int queen) {
+        return this.chambers[chamberIndexOf(queen)];
+    }
+
+    /**
+     * Pick the chamber the next drone enters, taking turns when sharded.
+     *
+     * @return the index of the chamber
+     */
+    public int chooseChamberIndex() {
+        return this.chambers.length == 1 ? 0 : Math.floorMod(this.nextChamber.getAndIncrement(), this.chambers.length);
+    }
+
+    /**
+     * Pick the chamber a drone enters.
+     *
+     * @param drone the drone
+     * @return the chamber
+     */
+    public QueensChamber chooseChamber(Drone drone) {
+        return this.chambers[chooseChamberIndex()];
+    }
+
+    /**
+     * A queen waits, without spinning, until the hive has at least 1 unit of
+     * both nectar and pollen and a drone is waiting in her chamber, or the
+     * simulation is over.
+     *
+     * @param queen the queen's index
+     */
+    public void awaitPairing(int queen) {
+        QueensChamber chamber = getChamber(queen);
+        this.signals[queen].await(() -> !this.active.getAsBoolean()
+                || (this.ledger.hasResources() && chamber.hasDrone()));
+    }
+
+    /**
+     * Pair a queen with the drone at the front of her chamber, claiming one
+     * unit of each resource for the birth.  The drone leaves the line but
+     * stays in the chamber until the queen summons it, see
+     * {@link QueensChamber#summonDrone(QueensChamber.Slot)}.
+     *
+     * @param queen the queen's index
+     * @return the drone's place in the chamber, or null if the queen cannot mate yet
+     *         or the simulation is over
+     */
+    public QueensChamber.Slot tryPair(int queen) {
+        QueensChamber chamber = getChamber(queen);
+        if (!this.active.getAsBoolean() || !chamber.hasDrone() || !tryClaim()) {
+            return null;
+        }
+        QueensChamber.Slot slot = chamber.reserveDrone();
+        if (slot == null) {
+            // another queen took the drone after we claimed the resources,
+            // which go back to any queen waiting on them
+            cancelClaim();
+            this.missedPairings.increment();
+            signalAll();
+        }
+        return slot;
+    }
+
+    /**
+     * Claim the resources for a pairing, for executors that keep the queen's
+     * drone themselves.  The claim is pending until the queen's births are
+     * recorded or it is given back with {@link #cancelClaim()}.
+     *
+     * @return whether the resources were claimed
+     */
+    public boolean tryClaim() {
+        if (!this.ledger.tryClaim()) {
+            return false;
+        }
+        this.pendingClaims.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Undo a pairing the queen was cancelled before acting on: the drone
+     * leaves the chamber without mating and the resources go back.
+     *
+     * @param queen the queen's index
+     * @param slot the drone's place in her chamber
+     */
+    public void cancelPairing(int queen, QueensChamber.Slot slot) {
+        getChamber(queen).dismissDrone(slot);
+        cancelClaim();
+    }
+
+    /**
+     * Give back the resources claimed for a pairing the queen was cancelled
+     * before acting on, for executors that keep the queen's drone themselves.
+     */
+    public void cancelClaim() {
+        this.pendingClaims.decrementAndGet();
+        this.ledger.unclaim();
+    }
+
+    /**
+     * How many units of each resource are claimed for pairings whose births
+     * have not been recorded?  A snapshot adds them back, as if the pairings
+     * had not happened.
+     *
+     * @return the units of each resource
+     */
+    public int getPendingClaims() {
+        return this.pendingClaims.get();
+    }
+
+    /**
+     * Dismiss every drone waiting in line in every chamber, for the end of
+     * the simulation.  Drones a queen has been paired with stay until she
+     * summons or dismisses them.
+     */
+    public void dismissAllDrones() {
+        for (QueensChamber chamber : this.chambers) {
+            chamber.dismissAllDrones();
+        }
+    }
+
+    /**
+     * Record a queen's mating and the bees she gave birth to, which settles
+     * the claim made for her pairing.
+     *
+     * @param queen the queen's index
+     * @param bees the number of bees born
+     */
+    public void recordBirths(int queen, int bees) {
+        this.pendingClaims.decrementAndGet();
+        this.matings.incrementAndGet(queen);
+        this.births.addAndGet(queen, bees);
+    }
+
+    /**
+     * Ring every queen's signal, e.g. after a deposit or at the end of the
+     * simulation.
+     */
+    public void signalAll() {
+        for (WakeSignal signal : this.signals) {
+            signal.signal();
+        }
+    }
+
+    /**
+     * Get the signal a queen waits on, for its statistics.
+     *
+     * @param queen the queen's index
+     * @return the queen's signal
+     */
+    public WakeSignal getSignal(int queen) {
+        return this.signals[queen];
+    }
+
+    /**
+     * How long did the queens wait for their mating conditions, in total?
+     *
+     * @return the time in nanoseconds
+     */
+    public long getIdleNanos() {
+        long total = 0;
+        for (WakeSignal signal : this.signals) {
+            total += signal.getIdleNanos();
+        }
+        return total;
+    }
+
+    /**
+     * How many times did a queen mate?
+     *
+     * @param queen the queen's index
+     * @return the number of matings
+     */
+    public long getMatings(int queen) {
+        return this.matings.get(queen);
+    }
+
+    /**
+     * How many bees did a queen give birth to?
+     *
+     * @param queen the queen's index
+     * @return the number of bees
+     */
+    public long getBirths(int queen) {
+        return this.births.get(queen);
+    }
+
+    /**
+     * How many times did a queen claim the resources for a birth and then
+     * find that another queen had taken the drone?
+     *
+     * @return the number of missed pairings
+     */
+    public long getMissedPairings() {
+        return this.missedPairings.sum();
+    }
+
+    /**
+     * How many drones are waiting in all of the chambers?
+     *
+     * @return the number of waiting drones
+     */
+    public int getQueueLength() {
+        int total = 0;
+        for (QueensChamber chamber : this.chambers) {
+            total += chamber.getQueueLength();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,64 @@
+package world;
+
+import bee.Bee;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the bees on a cached pool of platform threads.  Threads are reused
+ * once a bee finishes (e.g. a drone that perished), so the hive does not
+ * pay for a fresh thread on every birth.
+ *
+ * @author Isaias Villalobos
+ */
+class PooledBeeExecutor implements BeeExecutor {
+    /** the shared pool */
+    private final ExecutorService pool;
+    /** the bees started that have not finished */
+    private final RunningBees running;
+
+    /**
+     * Create the executor with an empty pool.
+     */
+    PooledBeeExecutor() {
+        this.pool = Executors.newCachedThreadPool();
+        this.running = new RunningBees();
+    }
+
+    @Override
+    public void start(Bee bee) {
+        try {
+            this.pool.execute(this.running.track(bee, bee.toString()));
+        } catch (RejectedExecutionException e) {
+            // born after the hive shut down, the bee would have nothing to do
+            this.running.finished();
+        }
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        this.pool.shutdown();
+        this.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        // once the bees are done the idle threads go away on their own
+        this.pool.shutdown();
+        return this.running.await(timeoutMs);
+    }
+
+    @Override
+    public void cancel() {
+        this.running.interruptAll();
+    }
+
+    @Override
+    public List<String> getRunning() {
+        return this.running.getLabels();
+    }
+}
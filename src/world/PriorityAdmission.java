@@ -0,0 +1,145 @@
+package world;
+
+import bee.Worker.Resource;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Field admission that favors the workers gathering one resource.  While a
+ * favored worker is waiting, a free flower always goes to it; the other
+ * workers only get flowers nobody favored is waiting for.  Within each
+ * group workers are woken in the order they started waiting.
+ *
+ * @author Isaias Villalobos
+ */
+class PriorityAdmission implements FieldAdmission {
+    /** the resource whose workers go first */
+    private final Resource favored;
+    /** guards the counts, only held for a few instructions at a time */
+    private final ReentrantLock lock;
+    /** signalled when a favored worker may take a flower */
+    private final Condition favoredTurn;
+    /** signalled when another worker may take a flower */
+    private final Condition othersTurn;
+    /** the free flowers */
+    private int free;
+    /** the number of favored workers waiting */
+    private int favoredWaiting;
+    /** the number of other workers waiting */
+    private int othersWaiting;
+
+    /**
+     * Create the admission.
+     *
+     * @param capacity the number of flowers
+     * @param favored the resource whose workers go first
+     */
+    PriorityAdmission(int capacity, Resource favored) {
+        this.favored = favored;
+        this.lock = new ReentrantLock();
+        this.favoredTurn = this.lock.newCondition();
+        this.othersTurn = this.lock.newCondition();
+        this.free = capacity;
+    }
+
+    @Override
+    public void acquire(Resource resource) throws InterruptedException {
+        this.lock.lock();
+        try {
+            if (resource == this.favored) {
+                this.favoredWaiting++;
+                try {
+                    while (this.free == 0) {
+                        this.favoredTurn.await();
+                    }
+                } catch (InterruptedException e) {
+                    this.favoredWaiting--;
+                    // the signal for a free flower may have been ours, and if we
+                    // were the last favored worker the others may go ahead now
+                    signalNext();
+                    throw e;
+                }
+                this.favoredWaiting--;
+            } else {
+                this.othersWaiting++;
+                try {
+                    while (this.free == 0 || this.favoredWaiting > 0) {
+                        this.othersTurn.await();
+                    }
+                } catch (InterruptedException e) {
+                    this.othersWaiting--;
+                    // the signal for a free flower may have been ours, pass it
+                    // to the next worker in line
+                    signalNext();
+                    throw e;
+                }
+                this.othersWaiting--;
+            }
+            this.free--;
+            // several flowers may have freed up at once, pass the rest along
+            signalNext();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(Resource resource) {
+        this.lock.lock();
+        try {
+            if (this.free == 0 || (resource != this.favored && this.favoredWaiting > 0)) {
+                return false;
+            }
+            this.free--;
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public void release(Resource resource) {
+        this.lock.lock();
+        try {
+            this.free++;
+            signalNext();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * If a flower is free, wake the next worker in line for it.  The lock
+     * must be held.
+     */
+    private void signalNext() {
+        if (this.free > 0) {
+            if (this.favoredWaiting > 0) {
+                this.favoredTurn.signal();
+            } else if (this.othersWaiting > 0) {
+                this.othersTurn.signal();
+            }
+        }
+    }
+
+    @Override
+    public int available() {
+        this.lock.lock();
+        try {
+            return this.free;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public int waiting() {
+        this.lock.lock();
+        try {
+            return this.favoredWaiting + this.othersWaiting;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package world;
 
 import bee.Drone;
+import log.EventLog;
+import log.EventType;
+import metrics.ContentionProfiler;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -12,81 +19,296 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * If the queen is ready and a drone is in here, the first drone will
  * be summoned and mate with the queen.  Otherwise the drone has to wait.
  * After a drone mates they perish, which is why there is no routine
- * for exiting (like with the worker bees and the flower field).
+ * for exiting (like with the worker bees and the flower field).<br>
+ * <br>
+ * Each waiting drone parks on a slot of its own, so summoning a drone wakes
+ * exactly that drone instead of every drone in the chamber.  Nothing here
+ * takes a lock, so waiting drones never pin the carrier thread when bees
+ * run on virtual threads.
  *
  * @author Sean Strout @ RIT CS
  * @author Isaias Villalobos
  */
 public class QueensChamber {
-    private final int SLEEP_TIME_MS = 1000;
-    Queue<Drone> queueDrones;
-    boolean queenReady;
+    /**
+     * Where one drone waits to be summoned or dismissed.  A queen holds on
+     * to the slot of the drone she has been paired with until she summons it.
+     */
+    public static final class Slot {
+        /** the waiting drone */
+        private final Drone drone;
+        /** the drone's thread, or null if nobody is parked on the slot */
+        private final Thread thread;
+        /** set once the drone may leave the chamber */
+        private volatile boolean released;
+
+        /**
+         * Create the slot.
+         *
+         * @param drone the waiting drone
+         * @param thread the drone's thread, or null if nobody parks on the slot
+         */
+        private Slot(Drone drone, Thread thread) {
+            this.drone = drone;
+            this.thread = thread;
+        }
+
+        /**
+         * Let the drone leave, waking it if it is parked.
+         */
+        private void release() {
+            this.released = true;
+            if (this.thread != null) {
+                LockSupport.unpark(this.thread);
+            }
+        }
+    }
+
+    /** the waiting drones, in the order they entered */
+    Queue<Slot> queueDrones;
+    /** set at the end of the simulation, no drone waits after this */
+    private volatile boolean closed;
+    /** run when a drone enters the chamber */
+    private final Runnable droneArrived;
+    /** the total time drones spent waiting in the chamber, or null if it is not being recorded */
+    private final LongAdder blockedNanos;
+    /** where the drones' waits are profiled, or null */
+    private final ContentionProfiler.SyncPoint contention;
 
     /**
-     * constructor, creates new Queue structure and sets Queen mate status to false
+     * constructor, creates new Queue structure with no drones waiting
      */
     public QueensChamber() {
+        this(new WakeSignal(false), null);
+    }
+
+    /**
+     * Create the chamber, ringing a signal each time a drone enters so a
+     * waiting queen can check whether she is able to mate.
+     *
+     * @param droneArrived rung when a drone enters the chamber
+     * @param blockedNanos where to add up the time drones spend waiting, or null not to
+     */
+    public QueensChamber(WakeSignal droneArrived, LongAdder blockedNanos) {
+        this(droneArrived::signal, blockedNanos);
+    }
+
+    /**
+     * Create the chamber, letting the queens know each time a drone enters,
+     * for chambers that several queens mate in.
+     *
+     * @param droneArrived run when a drone enters the chamber
+     * @param blockedNanos where to add up the time drones spend waiting, or null not to
+     */
+    public QueensChamber(Runnable droneArrived, LongAdder blockedNanos) {
+        this(droneArrived, blockedNanos, null);
+    }
+
+    /**
+     * Create the chamber, letting the queens know each time a drone enters,
+     * and profile how long the drones wait in it.
+     *
+     * @param droneArrived run when a drone enters the chamber
+     * @param blockedNanos where to add up the time drones spend waiting, or null not to
+     * @param contention where to profile the drones' waits, or null not to
+     */
+    public QueensChamber(Runnable droneArrived, LongAdder blockedNanos, ContentionProfiler.SyncPoint contention) {
+        this.contention = contention;
+        this.droneArrived = droneArrived;
+        this.blockedNanos = blockedNanos;
         queueDrones = new ConcurrentLinkedQueue<>();
-        queenReady = false;
+        closed = false;
     }
 
     /**
      * The bees should be stored in some queue like collection.
-     * If the queen is ready and this drone is at the front of the collection, they are allowed to mate. Otherwise they must wait.
+     * The drone waits until the queen summons it, which only happens once it
+     * is at the front of the collection, or until all the drones are dismissed.
+     * Being interrupted is how the bee hive cancels the drone when it shuts
+     * down: a drone still in line leaves right away, while one a queen has
+     * already been paired with waits for her to summon or dismiss it.  The
+     * drone keeps its interrupt status either way.
      * @param drone bee
      */
-    public synchronized void enterChamber(Drone drone) {
-
-        System.out.println("*QC* " + drone + " enters chamber");
-        queueDrones.add(drone);
-        while(!queueDrones.element().equals(drone) || !queenReady) //could write if this hasDrone
-        {
-            try {
-                this.wait();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+    public void enterChamber(Drone drone) {
+        long start = blockedNanos == null && contention == null ? 0 : System.nanoTime();
+        Slot slot = enqueue(drone, Thread.currentThread());
+        if (closed && queueDrones.remove(slot)) {
+            // the chamber was emptied while we were getting in line
+            slot.release();
+        }
+        boolean cancelled = false;
+        while (!slot.released) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                cancelled = true;
+                if (queueDrones.remove(slot)) {
+                    slot.release();
+                }
             }
         }
-        queueDrones.remove();
-        queenReady = false;
-        System.out.println("*QC* " + drone + " leaves chamber");
+        if (cancelled) {
+            Thread.currentThread().interrupt();
+        }
+        if (blockedNanos != null || contention != null) {
+            long waited = System.nanoTime() - start;
+            if (blockedNanos != null) {
+                blockedNanos.add(waited);
+            }
+            if (contention != null) {
+                contention.acquired(waited);
+            }
+        }
+        EventLog.log(EventType.CHAMBER_EXIT, drone);
+    }
 
+    /**
+     * Add the drone to the back of the collection without waiting to be
+     * summoned, and display the message:<br>
+     * <br>
+     * <tt>*QC* {bee} enters chamber</tt><br>
+     * <br>
+     *
+     * @param drone bee
+     */
+    public void queueDrone(Drone drone) {
+        enqueue(drone, null);
+    }
 
+    /**
+     * Put the drone in line and ring the queen's signal.
+     *
+     * @param drone the drone
+     * @param thread the thread that will park on the slot, or null
+     * @return the drone's slot
+     */
+    private Slot enqueue(Drone drone, Thread thread) {
+        EventLog.log(EventType.CHAMBER_ENTER, drone);
+        Slot slot = new Slot(drone, thread);
+        queueDrones.add(slot);
+        droneArrived.run();
+        return slot;
+    }
+
+    /**
+     * Mate with the drone at the front of the collection and remove it right
+     * away.  This is the summon/leave hand-off for callers whose drones do not
+     * have threads waiting in {@link #enterChamber(Drone)}, like the discrete
+     * event engine.
+     *
+     * @return the drone that mated, or null if the chamber was empty
+     */
+    public Drone mateNextDrone() {
+        Slot slot = queueDrones.poll();
+        return slot == null ? null : mateDrone(slot);
+    }
+
+    /**
+     * Mate with a drone that was taken out of line with {@link #reserveDrone()}
+     * and remove it right away, like {@link #mateNextDrone()}.
+     *
+     * @param slot the drone's slot
+     * @return the drone that mated
+     */
+    public Drone mateDrone(Slot slot) {
+        slot.drone.setMated();
+        EventLog.log(EventType.MATE, slot.drone);
+        EventLog.log(EventType.CHAMBER_EXIT, slot.drone);
+        slot.release();
+        return slot.drone;
     }
 
     /**
      * When the queen is ready, they will summon the next drone from the collection (if at least one is there).
-     * The queen will mate with the first drone and display a message:
-     */
-    public synchronized void summonDrone() {
-        if(!queueDrones.isEmpty()) {
-            Drone d = queueDrones.peek();
-            this.queenReady = true;
-            d.setMated();
-            System.out.println("*QC* Queen mates with " + d);
-            notifyAll();
-        }
-        else{
-            System.out.println("prints");
+     * The queen will mate with the first drone and display a message:<br>
+     * <br>
+     * <tt>*QC* Queen mates with {bee}</tt><br>
+     * <br>
+     * Only that drone is woken up.
+     */
+    public void summonDrone() {
+        Slot slot = queueDrones.poll();
+        if (slot != null) {
+            summonDrone(slot);
         }
     }
 
     /**
-     * At the end of the simulation the queen uses this routine repeatedly
-     * to dismiss all the drones that were waiting to mate.
+     * Take the drone at the front of the collection out of line for a queen
+     * who will mate with it later.  The drone keeps waiting in the chamber,
+     * and is not dismissed at the end, until it is summoned.
+     *
+     * @return the drone's slot, or null if the chamber was empty
+     */
+    public Slot reserveDrone() {
+        return queueDrones.poll();
+    }
+
+    /**
+     * Summon a drone that was taken out of line with {@link #reserveDrone()},
+     * mate with it and display the same message as {@link #summonDrone()}.
+     *
+     * @param slot the drone's slot
      */
-    public synchronized void dismissDrone() {
-        queenReady = true;
-        notifyAll();
+    public void summonDrone(Slot slot) {
+        slot.drone.setMated();
+        EventLog.log(EventType.MATE, slot.drone);
+        slot.release();
     }
 
     /**
-     * Are there any waiting drones? The queen uses this to check if she can mate,
-     * and also in conjunction with dismissDrone().
+     * Let a drone that was taken out of line with {@link #reserveDrone()}
+     * leave without mating, e.g. when its queen is cancelled before she
+     * summons it.
+     *
+     * @param slot the drone's slot
+     */
+    public void dismissDrone(Slot slot) {
+        slot.release();
+    }
+
+    /**
+     * At the end of the simulation the queen uses this routine to dismiss,
+     * in one pass, all the drones that were waiting to mate.  Drones that
+     * enter the chamber afterwards do not wait.
+     */
+    public void dismissAllDrones() {
+        closed = true;
+        Slot slot;
+        while ((slot = queueDrones.poll()) != null) {
+            slot.release();
+        }
+    }
+
+    /**
+     * Are there any waiting drones? The queen uses this to check if she can mate.
      * @return boolean
      */
     public boolean hasDrone() {
-        return queueDrones.size() > 0 ;
+        return !queueDrones.isEmpty();
+    }
+
+    /**
+     * Get the drones waiting in line, in order.  This walks the collection,
+     * so it is meant for snapshots rather than the mating path.
+     *
+     * @return the waiting drones
+     */
+    public List<Drone> getWaitingDrones() {
+        List<Drone> drones = new ArrayList<>();
+        for (Slot slot : queueDrones) {
+            drones.add(slot.drone);
+        }
+        return drones;
     }
-}
 
+    /**
+     * How many drones are waiting?  This walks the collection, so it is meant
+     * for statistics rather than the mating path.
+     *
+     * @return the number of waiting drones
+     */
+    public int getQueueLength() {
+        return queueDrones.size();
+    }
+}
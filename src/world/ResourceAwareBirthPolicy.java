@@ -0,0 +1,127 @@
+package world;
+
+import bee.Queen;
+import bee.Worker.Resource;
+import util.RandomBee;
+
+import java.util.List;
+
+/**
+ * Sizes the litters and mixes the roles from what the hive needs, so that
+ * it does not keep spawning bees that only add threads and lock traffic:<br>
+ * <br>
+ * <ul>
+ * <li>A litter is rolled like the original, between
+ * {@link Queen#MIN_NEW_BEES} and {@link Queen#MAX_NEW_BEES}, then shrunk by
+ * how much of the original mix is still wanted, and is never bigger than
+ * the stock can pay for.  When the fields are saturated and enough drones
+ * are waiting, there is little for more bees to do and the litter is a
+ * single bee.</li>
+ * <li>Drones are born up to the original 60% of the time while the queens
+ * are short of drones, less and less as drones line up in the queen's
+ * chamber, and not at all once {@link #DRONE_BACKLOG} are waiting for
+ * each queen sharing it.  A queen with no drone left waiting always gets
+ * one, or the hive would stop mating for good.</li>
+ * <li>Workers take the rest, fewer of them the longer the fields' lines
+ * are.  They gather whichever of nectar and pollen is scarcer, in
+ * proportion to how short the hive is of it.</li>
+ * </ul>
+ * <br>
+ * The fields are saturated when the workers gathering and waiting fill
+ * every flower, counting the workers waiting in the lines of executors
+ * that keep their own (see {@link BeeHive#getFieldLoad(int)}).
+ *
+ * @author Isaias Villalobos
+ */
+class ResourceAwareBirthPolicy implements BirthPolicy {
+    /** the drones waiting per queen at which no more drones are born */
+    static final int DRONE_BACKLOG = 2;
+    /** the share of drones born when no drone is waiting, in percent */
+    static final int DRONE_PERCENT = 60;
+
+    @Override
+    public int litterSize(BeeHive beeHive, int queen, RandomBee.Stream random) {
+        int size = random.nextInt(Queen.MIN_NEW_BEES, Queen.MAX_NEW_BEES);
+        int dronePercent = dronePercent(beeHive, queen);
+        int wanted = dronePercent + workerPercent(beeHive, dronePercent);
+        size = Math.max(Queen.MIN_NEW_BEES, (int) Math.round(size * wanted / 100.0));
+        // the first bee is paid for already
+        int affordable = 1 + Math.max(0, Math.min(beeHive.getRemainingNectar(), beeHive.getRemainingPollen()));
+        return Math.min(size, affordable);
+    }
+
+    @Override
+    public Resource nextBee(BeeHive beeHive, int queen, RandomBee.Stream random) {
+        int dronePercent = dronePercent(beeHive, queen);
+        int workerPercent = workerPercent(beeHive, dronePercent);
+        int roll = random.nextInt(1, Math.max(1, dronePercent + workerPercent));
+        if (roll <= dronePercent) {
+            return Resource.NONE;
+        }
+        int nectar = Math.max(0, beeHive.getRemainingNectar());
+        int pollen = Math.max(0, beeHive.getRemainingPollen());
+        if (nectar + pollen == 0) {
+            return roll % 2 == 0 ? Resource.NECTAR : Resource.POLLEN;
+        }
+        // the more nectar in stock, the more pollen workers, and the other way around
+        return random.nextInt(1, nectar + pollen) <= nectar ? Resource.POLLEN : Resource.NECTAR;
+    }
+
+    /**
+     * How often should a bee born now be a drone?
+     *
+     * @param beeHive the bee hive
+     * @param queen the queen's index
+     * @return the share of drones, in percent
+     */
+    private static int dronePercent(BeeHive beeHive, int queen) {
+        if (beeHive.getWaitingDrones(queen) == 0) {
+            return 100;
+        }
+        return (int) Math.round(DRONE_PERCENT * droneShortage(beeHive, queen));
+    }
+
+    /**
+     * How often should a bee born now be a worker?  The workers take what
+     * the drones leave, less the more workers the fields already turn away.
+     *
+     * @param beeHive the bee hive
+     * @param dronePercent the share of drones, in percent
+     * @return the share of workers, in percent
+     */
+    private static int workerPercent(BeeHive beeHive, int dronePercent) {
+        double saturation = fieldSaturation(beeHive);
+        return (int) Math.round((100 - dronePercent) * (saturation <= 1.0 ? 1.0 : 1.0 / saturation));
+    }
+
+    /**
+     * How short of drones is the queen?
+     *
+     * @param beeHive the bee hive
+     * @param queen the queen's index
+     * @return 1 if no drone is waiting for her, down to 0 at the backlog
+     */
+    private static double droneShortage(BeeHive beeHive, int queen) {
+        MatingScheduler scheduler = beeHive.getMatingScheduler();
+        int sharing = scheduler.getQueenCount() / scheduler.getChamberCount();
+        int backlog = DRONE_BACKLOG * Math.max(1, sharing);
+        return Math.max(0.0, 1.0 - (double) beeHive.getWaitingDrones(queen) / backlog);
+    }
+
+    /**
+     * How busy are the flower fields?
+     *
+     * @param beeHive the bee hive
+     * @return the workers gathering or waiting per flower, over all the fields
+     */
+    private static double fieldSaturation(BeeHive beeHive) {
+        long load = 0;
+        long capacity = 0;
+        List<FlowerField> fields = beeHive.getFlowerFields();
+        for (int i = 0; i < fields.size(); i++) {
+            load += beeHive.getFieldLoad(i);
+            capacity += fields.get(i).getCapacity();
+        }
+        return capacity == 0 ? 0 : (double) load / capacity;
+    }
+}
@@ -0,0 +1,215 @@
+package world;
+
+import bee.Worker.Resource;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The bee hive's books for nectar and pollen, kept without any locks.<br>
+ * <br>
+ * The totals gathered only ever grow and are only read at the end, so they
+ * are striped counters that many workers can bump at once without
+ * contending.  The current stock of both resources is packed into a single
+ * atomic word (nectar in the high half, pollen in the low half, each offset
+ * so it may go negative), which lets the queen check for and claim one unit
+ * of each resource in one atomic step.  A worker carrying several units
+ * deposits them all with one update of the stock.
+ *
+ * @author Isaias Villalobos
+ */
+public class ResourceLedger {
+    /** the offset added to each half so negative amounts can be packed */
+    private static final long BIAS = 1L << 31;
+    /** one unit of nectar in the packed stock */
+    private static final long NECTAR_UNIT = 1L << 32;
+    /** one unit of pollen in the packed stock */
+    private static final long POLLEN_UNIT = 1L;
+    /** one unit of each resource in the packed stock */
+    private static final long ONE_OF_EACH = NECTAR_UNIT + POLLEN_UNIT;
+
+    /** the packed nectar and pollen currently in the hive */
+    private final AtomicLong stock;
+    /** the total amount of nectar gathered */
+    private final LongAdder nectarGathered;
+    /** the total amount of pollen gathered */
+    private final LongAdder pollenGathered;
+    /** the number of times the stock was updated by a deposit */
+    private final LongAdder depositUpdates;
+
+    /**
+     * Create the ledger with nothing in stock and nothing gathered.
+     */
+    public ResourceLedger() {
+        this.stock = new AtomicLong(pack(0, 0));
+        this.nectarGathered = new LongAdder();
+        this.pollenGathered = new LongAdder();
+        this.depositUpdates = new LongAdder();
+    }
+
+    /**
+     * Pack amounts of nectar and pollen into one word.
+     *
+     * @param nectar the nectar
+     * @param pollen the pollen
+     * @return the packed word
+     */
+    private static long pack(long nectar, long pollen) {
+        return ((nectar + BIAS) << 32) | (pollen + BIAS);
+    }
+
+    /**
+     * Get the nectar out of a packed word.
+     *
+     * @param packed the packed word
+     * @return the nectar
+     */
+    private static int nectarOf(long packed) {
+        return (int) ((packed >>> 32) - BIAS);
+    }
+
+    /**
+     * Get the pollen out of a packed word.
+     *
+     * @param packed the packed word
+     * @return the pollen
+     */
+    private static int pollenOf(long packed) {
+        return (int) ((packed & 0xFFFFFFFFL) - BIAS);
+    }
+
+    /**
+     * Record one unit of a resource being deposited.
+     *
+     * @param resource the resource, NONE is ignored
+     */
+    public void deposit(Resource resource) {
+        deposit(resource, 1);
+    }
+
+    /**
+     * Record several units of a resource being deposited at once, with a
+     * single update of the stock.
+     *
+     * @param resource the resource, NONE is ignored
+     * @param units the number of units
+     */
+    public void deposit(Resource resource, int units) {
+        if (resource == Resource.NECTAR) {
+            this.nectarGathered.add(units);
+            this.stock.addAndGet(units * NECTAR_UNIT);
+            this.depositUpdates.increment();
+        } else if (resource == Resource.POLLEN) {
+            this.pollenGathered.add(units);
+            this.stock.addAndGet(units * POLLEN_UNIT);
+            this.depositUpdates.increment();
+        }
+    }
+
+    /**
+     * Is there at least 1 unit of both nectar and pollen in stock?
+     *
+     * @return do we have enough resources?
+     */
+    public boolean hasResources() {
+        long current = this.stock.get();
+        return nectarOf(current) >= 1 && pollenOf(current) >= 1;
+    }
+
+    /**
+     * Claim 1 unit of each resource, but only if both are in stock.  The
+     * check and the claim happen in one atomic step.
+     *
+     * @return whether the resources were claimed
+     */
+    public boolean tryClaim() {
+        while (true) {
+            long current = this.stock.get();
+            if (nectarOf(current) < 1 || pollenOf(current) < 1) {
+                return false;
+            }
+            if (this.stock.compareAndSet(current, current - ONE_OF_EACH)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claim 1 unit of each resource whether or not they are in stock.  The
+     * stock may go negative.
+     */
+    public void claim() {
+        this.stock.addAndGet(-ONE_OF_EACH);
+    }
+
+    /**
+     * Give back 1 unit of each resource that was claimed for a birth that did
+     * not happen.  Unlike a deposit this is not counted as gathered.
+     */
+    public void unclaim() {
+        this.stock.addAndGet(ONE_OF_EACH);
+    }
+
+    /**
+     * Set the books to the amounts saved in a snapshot, for a ledger that
+     * has not been used yet.
+     *
+     * @param nectar the nectar in stock
+     * @param pollen the pollen in stock
+     * @param nectarGathered the total nectar gathered
+     * @param pollenGathered the total pollen gathered
+     * @param depositUpdates the number of deposits that updated the stock
+     */
+    public void restore(int nectar, int pollen, int nectarGathered, int pollenGathered, long depositUpdates) {
+        this.stock.set(pack(nectar, pollen));
+        this.nectarGathered.add(nectarGathered);
+        this.pollenGathered.add(pollenGathered);
+        this.depositUpdates.add(depositUpdates);
+    }
+
+    /**
+     * How much nectar is in stock?
+     *
+     * @return nectar remaining
+     */
+    public int getNectar() {
+        return nectarOf(this.stock.get());
+    }
+
+    /**
+     * How much pollen is in stock?
+     *
+     * @return pollen remaining
+     */
+    public int getPollen() {
+        return pollenOf(this.stock.get());
+    }
+
+    /**
+     * How much total nectar was gathered?
+     *
+     * @return total nectar gathered
+     */
+    public int getNectarGathered() {
+        return this.nectarGathered.intValue();
+    }
+
+    /**
+     * How much total pollen was gathered?
+     *
+     * @return total pollen gathered
+     */
+    public int getPollenGathered() {
+        return this.pollenGathered.intValue();
+    }
+
+    /**
+     * How many times did a deposit update the stock?  With one unit per
+     * trip this is the number of units gathered.
+     *
+     * @return the number of updates
+     */
+    public long getDepositUpdates() {
+        return this.depositUpdates.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package world;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sends each trip to the next field in turn, without looking at the loads.
+ *
+ * @author Isaias Villalobos
+ */
+class RoundRobinRouter implements FieldRouter {
+    /** the number of trips routed so far */
+    private final AtomicInteger trips = new AtomicInteger();
+
+    @Override
+    public int route(int fields, IntUnaryOperator load) {
+        return Math.floorMod(this.trips.getAndIncrement(), fields);
+    }
+}
@@ -0,0 +1,135 @@
+package world;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of the bees whose run() bodies are executing on threads, so
+ * that the hive can wait for them with a deadline, interrupt them when it
+ * shuts down and name the ones that did not finish in time.  A bee's thread
+ * is only held on to while its bee runs.
+ *
+ * @author Isaias Villalobos
+ */
+class RunningBees {
+    /** the number of bees started that have not finished */
+    private final AtomicInteger running;
+    /** the thread of each bee that is running, and the bee's label */
+    private final Map<Thread, String> threads;
+    /** guards waiting for the running bees */
+    private final ReentrantLock lock;
+    /** signaled when the last running bee finishes */
+    private final Condition allFinished;
+
+    /**
+     * Create the tracker with no bees running.
+     */
+    RunningBees() {
+        this.running = new AtomicInteger();
+        this.threads = new ConcurrentHashMap<>();
+        this.lock = new ReentrantLock();
+        this.allFinished = this.lock.newCondition();
+    }
+
+    /**
+     * Wrap a bee's task so it is tracked from now until it finishes.
+     *
+     * @param task the bee's task
+     * @param label the bee's label, taken now since a drone may be reused by the time it finishes
+     * @return the tracked task, whose string is the label
+     */
+    Runnable track(Runnable task, String label) {
+        this.running.incrementAndGet();
+        return new Runnable() {
+            @Override
+            public void run() {
+                Thread thread = Thread.currentThread();
+                threads.put(thread, label);
+                try {
+                    task.run();
+                } finally {
+                    threads.remove(thread);
+                    finished();
+                }
+            }
+
+            @Override
+            public String toString() {
+                return label;
+            }
+        };
+    }
+
+    /**
+     * A bee that runs without a thread of its own has started, e.g. a
+     * worker whose trips are timer tasks.  It is tracked until
+     * {@link #finished()} is called for it, but it has no thread to
+     * interrupt or label.
+     */
+    void started() {
+        this.running.incrementAndGet();
+    }
+
+    /**
+     * A tracked task is over, or was never started.
+     */
+    void finished() {
+        if (this.running.decrementAndGet() == 0) {
+            this.lock.lock();
+            try {
+                this.allFinished.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait for every tracked bee to finish, giving up after a while.
+     *
+     * @param timeoutMs the longest to wait, or a negative number to wait for as long as it takes
+     * @return whether every bee finished
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    boolean await(long timeoutMs) throws InterruptedException {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.lock.lock();
+        try {
+            while (this.running.get() > 0) {
+                if (timeoutMs < 0) {
+                    this.allFinished.await();
+                } else if (nanos <= 0) {
+                    return false;
+                } else {
+                    nanos = this.allFinished.awaitNanos(nanos);
+                }
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Interrupt every bee that is running, which makes it stop waiting or
+     * sleeping and finish.
+     */
+    void interruptAll() {
+        this.threads.keySet().forEach(Thread::interrupt);
+    }
+
+    /**
+     * Get the labels of the bees that are running.
+     *
+     * @return the labels
+     */
+    List<String> getLabels() {
+        return new ArrayList<>(this.threads.values());
+    }
+}
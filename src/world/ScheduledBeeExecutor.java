@@ -0,0 +1,299 @@
+package world;
+
+import bee.Bee;
+import bee.Worker;
+import log.EventLog;
+import log.EventType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the workers' foraging trips as timer tasks on a small shared
+ * scheduler instead of parking a thread per worker in a sleep.  A worker
+ * takes a flower, the end of its trip is scheduled for the worker sleep time
+ * later on the hive's clock, and when it fires the worker leaves the field,
+ * deposits and heads straight back out, all on a scheduler thread.  The
+ * field's capacity and admission policy are reused as is: a worker that
+ * finds no free flower joins the field's line and is handed the flower of
+ * the next worker to leave, first come first served, like the discrete
+ * event engine does.  The queens and the drones wait on each other in the
+ * chamber, so they still run on a cached pool of threads like
+ * {@link PooledBeeExecutor}.<br>
+ * <br>
+ * When the hive shuts down the trips in progress run to the end of their
+ * flower time, without depositing, just like sleeping workers do.
+ * Cancelling ends them right away instead, which is what interrupting a
+ * sleeping worker does.
+ *
+ * @author Isaias Villalobos
+ */
+class ScheduledBeeExecutor implements BeeExecutor {
+    /**
+     * One field and the workers waiting in line for it.
+     */
+    private static final class FieldLine {
+        /** the field */
+        private final FlowerField field;
+        /** the workers waiting for a flower, first come first served, guarded by this line */
+        private final Queue<Worker> waiters;
+        /** the number of waiting workers, for the router */
+        private volatile int waiting;
+
+        /**
+         * Create the line for a field, with nobody in it.
+         *
+         * @param field the field
+         */
+        private FieldLine(FlowerField field) {
+            this.field = field;
+            this.waiters = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * A worker's trip to a field, from taking a flower to leaving.  The trip
+     * is ended once, either by its timer or by the hive cancelling it.
+     */
+    private final class Trip implements Runnable {
+        /** the worker */
+        private final Worker worker;
+        /** the field's line */
+        private final FieldLine line;
+        /** has the trip been ended? */
+        private final AtomicBoolean ended;
+
+        /**
+         * Create the trip of a worker that has taken a flower.
+         *
+         * @param worker the worker
+         * @param line the field's line
+         */
+        private Trip(Worker worker, FieldLine line) {
+            this.worker = worker;
+            this.line = line;
+            this.ended = new AtomicBoolean();
+        }
+
+        @Override
+        public void run() {
+            if (this.ended.compareAndSet(false, true)) {
+                trips.remove(this);
+                gathered(this.worker, this.line);
+            }
+        }
+    }
+
+    /** the bee hive */
+    private final BeeHive beeHive;
+    /** drives the foraging trips */
+    private final ScheduledExecutorService scheduler;
+    /** runs the queens and the drones */
+    private final ExecutorService pool;
+    /** the bees started that have not finished, workers included */
+    private final RunningBees running;
+    /** each field's line, in the hive's order */
+    private final FieldLine[] lines;
+    /** the trips that have not ended */
+    private final Map<Trip, Boolean> trips;
+    /** the workers that have not finished, and their labels */
+    private final Map<Worker, String> foragers;
+
+    /**
+     * Create the executor for the bee hive.
+     *
+     * @param beeHive the bee hive
+     * @param threads the number of threads that drive the trips
+     */
+    ScheduledBeeExecutor(BeeHive beeHive, int threads) {
+        this.beeHive = beeHive;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "forager-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, threads), factory);
+        this.pool = Executors.newCachedThreadPool();
+        this.running = new RunningBees();
+        List<FlowerField> fields = beeHive.getFlowerFields();
+        this.lines = new FieldLine[fields.size()];
+        for (int i = 0; i < this.lines.length; i++) {
+            this.lines[i] = new FieldLine(fields.get(i));
+        }
+        this.trips = new ConcurrentHashMap<>();
+        this.foragers = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void start(Bee bee) {
+        if (bee instanceof Worker) {
+            Worker worker = (Worker) bee;
+            this.running.started();
+            this.foragers.put(worker, worker.toString());
+            arrive(worker);
+            return;
+        }
+        try {
+            this.pool.execute(this.running.track(bee, bee.toString()));
+        } catch (RejectedExecutionException e) {
+            // born after the hive shut down, the bee would have nothing to do
+            this.running.finished();
+        }
+    }
+
+    @Override
+    public int getWaitingWorkers(FlowerField field, int index) {
+        return this.lines[index].waiting;
+    }
+
+    /**
+     * The worker arrives at the field the hive's router picks, or after a
+     * restore the field it was gathering in.  It either takes a free flower
+     * and its trip starts, or it joins the line.
+     *
+     * @param worker the worker
+     */
+    private void arrive(Worker worker) {
+        FieldLine line = this.lines[fieldFor(worker)];
+        synchronized (line) {
+            // checked under the line's lock, so a worker cannot join the line
+            // after the last one out has turned everybody in it away
+            if (!this.beeHive.isActive()) {
+                finish(worker);
+                return;
+            }
+            EventLog.log(EventType.FIELD_ENTER, worker);
+            if (!line.field.tryEnterField(worker)) {
+                line.waiters.add(worker);
+                line.waiting = line.waiters.size();
+                return;
+            }
+        }
+        beginTrip(worker, line);
+    }
+
+    /**
+     * Pick the field a worker heads to.
+     *
+     * @param worker the worker
+     * @return the index of the field
+     */
+    private int fieldFor(Worker worker) {
+        FlowerField restored = worker.getFlowerField();
+        if (restored != null) {
+            for (int i = 0; i < this.lines.length; i++) {
+                if (this.lines[i].field == restored) {
+                    return i;
+                }
+            }
+        }
+        return this.lines.length == 1 ? 0 : this.beeHive.getFieldRouter().route(this.lines.length,
+                i -> this.lines[i].field.getOccupancy() + this.lines[i].waiting);
+    }
+
+    /**
+     * The worker has taken a flower, schedule the end of its trip.
+     *
+     * @param worker the worker
+     * @param line the field's line
+     */
+    private void beginTrip(Worker worker, FieldLine line) {
+        Trip trip = new Trip(worker, line);
+        this.trips.put(trip, Boolean.TRUE);
+        try {
+            this.scheduler.schedule(trip, this.beeHive.getClock().toWallNanos(Worker.WORKER_SLEEP_TIME_MS),
+                    TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // the hive already shut down, the trip ends right away
+            trip.run();
+        }
+    }
+
+    /**
+     * The worker is done gathering.  It leaves the field, handing its flower
+     * to the next worker in line, deposits its resource and heads back out.
+     *
+     * @param worker the worker
+     * @param line the field's line
+     */
+    private void gathered(Worker worker, FieldLine line) {
+        line.field.exitField(worker);
+        Worker next = null;
+        List<Worker> turnedAway = null;
+        synchronized (line) {
+            if (!this.beeHive.isActive()) {
+                // nobody in line will be let in now
+                turnedAway = new ArrayList<>(line.waiters);
+                line.waiters.clear();
+            } else if (!line.waiters.isEmpty() && line.field.tryEnterField(line.waiters.peek())) {
+                next = line.waiters.remove();
+            }
+            line.waiting = line.waiters.size();
+        }
+        if (next != null) {
+            beginTrip(next, line);
+        }
+        if (turnedAway != null) {
+            turnedAway.forEach(this::finish);
+        }
+        if (this.beeHive.isActive()) {
+            this.beeHive.deposit(worker.getResource(), worker);
+            arrive(worker);
+        } else {
+            finish(worker);
+        }
+    }
+
+    /**
+     * The worker is done for good.
+     *
+     * @param worker the worker
+     */
+    private void finish(Worker worker) {
+        if (this.foragers.remove(worker) != null) {
+            this.running.finished();
+        }
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        awaitTermination(-1);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        // the trips in progress still run to the end after the shutdown
+        this.scheduler.shutdown();
+        this.pool.shutdown();
+        return this.running.await(timeoutMs);
+    }
+
+    @Override
+    public void cancel() {
+        this.running.interruptAll();
+        for (Trip trip : this.trips.keySet()) {
+            trip.run();
+        }
+        this.scheduler.shutdownNow();
+    }
+
+    @Override
+    public List<String> getRunning() {
+        List<String> labels = this.running.getLabels();
+        labels.addAll(this.foragers.values());
+        return labels;
+    }
+}
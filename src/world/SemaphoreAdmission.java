@@ -0,0 +1,52 @@
+package world;
+
+import bee.Worker.Resource;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Field admission on a counting semaphore, one permit per flower.  Taking
+ * and returning a permit is a compare-and-set when there is no contention;
+ * only workers that find the field full park.
+ *
+ * @author Isaias Villalobos
+ */
+class SemaphoreAdmission implements FieldAdmission {
+    /** the free flowers */
+    private final Semaphore flowers;
+
+    /**
+     * Create the admission.
+     *
+     * @param capacity the number of flowers
+     * @param fair whether waiting workers are served first come, first served
+     */
+    SemaphoreAdmission(int capacity, boolean fair) {
+        this.flowers = new Semaphore(capacity, fair);
+    }
+
+    @Override
+    public void acquire(Resource resource) throws InterruptedException {
+        this.flowers.acquire();
+    }
+
+    @Override
+    public boolean tryAcquire(Resource resource) {
+        return this.flowers.tryAcquire();
+    }
+
+    @Override
+    public void release(Resource resource) {
+        this.flowers.release();
+    }
+
+    @Override
+    public int available() {
+        return this.flowers.availablePermits();
+    }
+
+    @Override
+    public int waiting() {
+        return this.flowers.getQueueLength();
+    }
+}
@@ -0,0 +1,135 @@
+package world;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The clock every bee and the main loop sleep on.  Durations are always
+ * given in simulated milliseconds, e.g. {@link bee.Worker#WORKER_SLEEP_TIME_MS},
+ * and the clock turns them into wall-clock time with its scale: at a scale
+ * of 100 a 300 second simulation takes 3 seconds, at 0.1 it is slowed
+ * down ten times for debugging.  Executors with a virtual clock (see
+ * {@link EventBeeExecutor}) never sleep, so the scale does not apply to
+ * them.<br>
+ * <br>
+ * The clock keeps track of how long its sleeps actually took, so that the
+ * scale achieved can be compared with the one requested.  At high scales
+ * a sleep is only a few microseconds long and waking the thread up costs
+ * about as much, which shows up as the bees' actual scale falling behind.
+ *
+ * @author Isaias Villalobos
+ */
+public class SimulationClock {
+    /** the scale of a clock that runs in real time */
+    public static final double REAL_TIME = 1.0;
+
+    /** simulated time per wall-clock time */
+    private final double scale;
+    /** the simulated time of the bees' sleeps that ran to the end */
+    private final LongAdder beeSimulatedNanos;
+    /** the wall-clock time those sleeps took */
+    private final LongAdder beeWallNanos;
+    /** the number of those sleeps */
+    private final LongAdder beeSleeps;
+    /** the simulated time the main loop ran for */
+    private long runSimulatedNanos;
+    /** the wall-clock time the main loop took */
+    private long runWallNanos;
+
+    /**
+     * Create the clock.
+     *
+     * @param scale simulated time per wall-clock time, e.g. 100 to run 100 times faster
+     * @throws IllegalArgumentException if the scale is not positive
+     */
+    public SimulationClock(double scale) {
+        if (!(scale > 0) || Double.isInfinite(scale)) {
+            throw new IllegalArgumentException("time scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        this.beeSimulatedNanos = new LongAdder();
+        this.beeWallNanos = new LongAdder();
+        this.beeSleeps = new LongAdder();
+    }
+
+    /**
+     * What scale was asked for?
+     *
+     * @return simulated time per wall-clock time
+     */
+    public double getScale() {
+        return this.scale;
+    }
+
+    /**
+     * How long does a simulated duration take on the wall clock?
+     *
+     * @param simulatedMs the simulated time in milliseconds
+     * @return the wall-clock time in nanoseconds
+     */
+    public long toWallNanos(long simulatedMs) {
+        return Math.round(TimeUnit.MILLISECONDS.toNanos(simulatedMs) / this.scale);
+    }
+
+    /**
+     * A bee sleeps for a simulated duration.
+     *
+     * @param simulatedMs the simulated time in milliseconds
+     * @throws InterruptedException if the bee is interrupted while sleeping, in
+     *                              which case the sleep is not counted
+     */
+    public void sleep(long simulatedMs) throws InterruptedException {
+        long start = System.nanoTime();
+        TimeUnit.NANOSECONDS.sleep(toWallNanos(simulatedMs));
+        this.beeWallNanos.add(System.nanoTime() - start);
+        this.beeSimulatedNanos.add(TimeUnit.MILLISECONDS.toNanos(simulatedMs));
+        this.beeSleeps.increment();
+    }
+
+    /**
+     * The main loop lets the executor run for a simulated duration,
+     * keeping track of the wall-clock time it took.
+     *
+     * @param executor the executor
+     * @param simulatedMs the simulated time in milliseconds
+     * @throws InterruptedException if the caller is interrupted while waiting
+     */
+    void run(BeeExecutor executor, long simulatedMs) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            executor.runFor(simulatedMs, this);
+        } finally {
+            this.runWallNanos += System.nanoTime() - start;
+            this.runSimulatedNanos += TimeUnit.MILLISECONDS.toNanos(simulatedMs);
+        }
+    }
+
+    /**
+     * What scale did the main loop achieve?  For a virtual clock this is
+     * how much faster than real time the simulation ran.
+     *
+     * @return simulated time per wall-clock time, or 0 if it has not run
+     */
+    public double getRunScale() {
+        return this.runWallNanos == 0 ? 0 : (double) this.runSimulatedNanos / this.runWallNanos;
+    }
+
+    /**
+     * What scale did the bees' sleeps achieve, overhead included?
+     *
+     * @return simulated time per wall-clock time, or 0 if no bee slept
+     */
+    public double getBeeScale() {
+        long wall = this.beeWallNanos.sum();
+        return wall == 0 ? 0 : (double) this.beeSimulatedNanos.sum() / wall;
+    }
+
+    /**
+     * How many bee sleeps ran to the end?
+     *
+     * @return the number of sleeps
+     */
+    public long getBeeSleeps() {
+        return this.beeSleeps.sum();
+    }
+}
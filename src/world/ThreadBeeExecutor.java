@@ -0,0 +1,98 @@
+package world;
+
+import bee.Bee;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Runs every bee on a thread of its own, and waits for the bees to finish.
+ * Only the bees that are running are kept track of, so a thread is
+ * forgotten as soon as its bee finishes (e.g. a drone that perished).
+ *
+ * @author Isaias Villalobos
+ */
+class ThreadBeeExecutor implements BeeExecutor {
+    /** creates and starts the thread for a bee's task */
+    private final Function<Runnable, Thread> starter;
+    /** the bees started that have not finished */
+    private final RunningBees running;
+
+    /**
+     * Create the executor.
+     *
+     * @param starter creates and starts the thread for a bee's task
+     */
+    private ThreadBeeExecutor(Function<Runnable, Thread> starter) {
+        this.starter = starter;
+        this.running = new RunningBees();
+    }
+
+    /**
+     * An executor that gives each bee a platform thread named after the bee.
+     *
+     * @return the executor
+     */
+    static ThreadBeeExecutor platform() {
+        return new ThreadBeeExecutor(task -> {
+            Thread thread = new Thread(task, task.toString());
+            thread.start();
+            return thread;
+        });
+    }
+
+    /**
+     * An executor that gives each bee a virtual thread.  Virtual threads are
+     * looked up reflectively so the simulation still compiles and runs on
+     * JVMs that predate them.
+     *
+     * @return the executor, or null if virtual threads are not supported
+     */
+    static ThreadBeeExecutor virtual() {
+        final Method startVirtual;
+        try {
+            startVirtual = Thread.class.getMethod("startVirtualThread", Runnable.class);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+        return new ThreadBeeExecutor(task -> {
+            try {
+                return (Thread) startVirtual.invoke(null, task);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalStateException("Unable to start " + task, e);
+            }
+        });
+    }
+
+    @Override
+    public void start(Bee bee) {
+        try {
+            this.starter.apply(this.running.track(bee, bee.toString()));
+        } catch (RuntimeException e) {
+            this.running.finished();
+            throw e;
+        }
+    }
+
+    @Override
+    public void awaitTermination() throws InterruptedException {
+        this.running.await(-1);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return this.running.await(timeoutMs);
+    }
+
+    @Override
+    public void cancel() {
+        this.running.interruptAll();
+    }
+
+    @Override
+    public List<String> getRunning() {
+        return this.running.getLabels();
+    }
+}
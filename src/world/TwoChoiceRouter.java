@@ -0,0 +1,44 @@
+package world;
+
+import util.RandomBee;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Picks two fields at random and sends the trip to the less loaded one
+ * (the power of two choices).  Only two loads are looked at however many
+ * fields there are.
+ *
+ * @author Isaias Villalobos
+ */
+class TwoChoiceRouter implements FieldRouter {
+    /** the random numbers, shared by all the workers */
+    private final RandomBee.Stream random;
+
+    /**
+     * Create the router.
+     *
+     * @param random the random numbers
+     */
+    TwoChoiceRouter(RandomBee.Stream random) {
+        this.random = random;
+    }
+
+    @Override
+    public int route(int fields, IntUnaryOperator load) {
+        if (fields == 1) {
+            return 0;
+        }
+        int first;
+        int second;
+        // a seeded stream is not thread safe
+        synchronized (this.random) {
+            first = this.random.nextInt(0, fields - 1);
+            second = this.random.nextInt(0, fields - 2);
+        }
+        if (second >= first) {
+            second++;
+        }
+        return load.applyAsInt(second) < load.applyAsInt(first) ? second : first;
+    }
+}
@@ -0,0 +1,132 @@
+package world;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A doorbell for a single waiting bee (the queen).  The waiter parks until
+ * its condition holds, and the bees that can make the condition true ring
+ * the bell after they change something.  Ringing is a volatile read when
+ * nobody is waiting, so it is cheap enough for the deposit path.<br>
+ * <br>
+ * The signal keeps statistics so the saving over polling can be reported.
+ * In spin mode it does not park at all, which reproduces the original busy
+ * loop for comparison.
+ *
+ * @author Isaias Villalobos
+ */
+public class WakeSignal {
+    /** the waiting thread, or null if nobody is waiting */
+    private volatile Thread waiter;
+    /** poll instead of parking */
+    private final boolean spin;
+    /** the number of times the condition was checked, only the waiter writes the counters */
+    private volatile long checks;
+    /** the number of times the waiter was woken up */
+    private volatile long wakeUps;
+    /** the number of wake ups where the condition still did not hold */
+    private volatile long spuriousWakeUps;
+    /** the total time the waiter spent parked */
+    private volatile long idleNanos;
+
+    /**
+     * Create the signal.
+     *
+     * @param spin whether to poll instead of parking
+     */
+    public WakeSignal(boolean spin) {
+        this.spin = spin;
+    }
+
+    /**
+     * Wait until the condition holds.  Only one thread may wait at a time.
+     * In spin mode this checks the condition once and returns.
+     *
+     * @param ready the condition
+     */
+    public void await(BooleanSupplier ready) {
+        checks++;
+        if (this.spin || ready.getAsBoolean()) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.waiter = Thread.currentThread();
+        try {
+            // the waiter is published before the re-check, so a ring that
+            // happens in between leaves a permit and park returns right away
+            boolean woken = false;
+            while (true) {
+                checks++;
+                if (ready.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (woken) {
+                    spuriousWakeUps++;
+                }
+                LockSupport.park(this);
+                wakeUps++;
+                woken = true;
+            }
+        } finally {
+            this.waiter = null;
+            idleNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Ring the bell, waking the waiter if there is one.
+     */
+    public void signal() {
+        Thread current = this.waiter;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    /**
+     * How many times was the condition checked?
+     *
+     * @return the number of checks
+     */
+    public long getChecks() {
+        return this.checks;
+    }
+
+    /**
+     * How many times was the waiter woken up?
+     *
+     * @return the number of wake ups
+     */
+    public long getWakeUps() {
+        return this.wakeUps;
+    }
+
+    /**
+     * How many times was the waiter woken up only to find the condition
+     * still did not hold?
+     *
+     * @return the number of spurious wake ups
+     */
+    public long getSpuriousWakeUps() {
+        return this.spuriousWakeUps;
+    }
+
+    /**
+     * How long did the waiter spend parked instead of spinning?
+     *
+     * @return the idle time in milliseconds
+     */
+    public long getIdleMs() {
+        return TimeUnit.NANOSECONDS.toMillis(this.idleNanos);
+    }
+
+    /**
+     * How long did the waiter spend parked?  Only finished waits count.
+     *
+     * @return the idle time in nanoseconds
+     */
+    public long getIdleNanos() {
+        return this.idleNanos;
+    }
+}